@@ -0,0 +1,25 @@
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+
+/**
+ * Точка входа бенчмарков. Принимает стандартные аргументы JMH и всегда подключает профилировщик GC,
+ * так что помимо ops/s каждый набор сообщает скорость аллокаций (gc.alloc.rate, gc.alloc.rate.norm).
+ *
+ *  mvn -P benchmark package
+ *  java -jar target/benchmarks.jar                        - все наборы
+ *  java -jar target/benchmarks.jar ControllerBenchmark    - только контроллер
+ *  java -jar target/benchmarks.jar -p devices=1000        - один размер дома
+ */
+public class SmartHouseBenchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cli = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class).build()).run();
+	}
+}
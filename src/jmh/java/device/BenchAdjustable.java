@@ -0,0 +1,70 @@
+package device;
+
+import env.EnvCondition;
+
+
+
+/**
+ * Регулируемое устройство-заглушка для бенчмарков: номинальная мощность и воздействие постоянны,
+ * фактическое воздействие пропорционально заданной мощности, ничего не выводит
+ */
+public class BenchAdjustable extends ElectronicDevice implements Adjustable, Influencer {
+	final private EnvCondition influenced;
+	final private double influence;
+	private volatile boolean isOnline;
+	private volatile int powerFactor = 100;
+
+	public BenchAdjustable(EnvCondition influenced, double influence, int power) {
+		super("BenchAdjustable", power, 0);
+		this.influenced = influenced;
+		this.influence = influence;
+	}
+
+	@Override
+	public void powerOn() {
+		isOnline = true;
+	}
+
+	@Override
+	public void powerOff() {
+		isOnline = false;
+	}
+
+	@Override
+	public boolean isOnline() {
+		return isOnline;
+	}
+
+	@Override
+	public void showStatus() {
+	}
+
+	@Override
+	public void run() {
+	}
+
+	@Override
+	public void setPowerFactor(int factorPercent) {
+		powerFactor = factorPercent;
+	}
+
+	@Override
+	public int getPowerFactor() {
+		return powerFactor;
+	}
+
+	@Override
+	public double getMaxInfluence() {
+		return influence;
+	}
+
+	@Override
+	public double getActualInfluence() {
+		return influence * powerFactor / 100;
+	}
+
+	@Override
+	public EnvCondition getInfluenced() {
+		return influenced;
+	}
+}
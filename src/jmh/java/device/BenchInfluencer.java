@@ -0,0 +1,54 @@
+package device;
+
+import env.EnvCondition;
+
+
+
+/**
+ * Устройство-заглушка для бенчмарков: воздействует на параметр климата с постоянной силой,
+ * включается и выключается мгновенно, ничего не выводит
+ */
+public class BenchInfluencer implements Switchable, Influencer {
+	final private EnvCondition influenced;
+	final private double influence;
+	private volatile boolean isOnline;
+
+	public BenchInfluencer(EnvCondition influenced, double influence) {
+		this.influenced = influenced;
+		this.influence = influence;
+	}
+
+	@Override
+	public void powerOn() {
+		isOnline = true;
+	}
+
+	@Override
+	public void powerOff() {
+		isOnline = false;
+	}
+
+	@Override
+	public boolean isOnline() {
+		return isOnline;
+	}
+
+	@Override
+	public void showStatus() {
+	}
+
+	@Override
+	public double getMaxInfluence() {
+		return influence;
+	}
+
+	@Override
+	public double getActualInfluence() {
+		return influence;
+	}
+
+	@Override
+	public EnvCondition getInfluenced() {
+		return influenced;
+	}
+}
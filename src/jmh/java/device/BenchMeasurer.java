@@ -0,0 +1,51 @@
+package device;
+
+import env.Environment;
+import env.Measurable;
+
+
+
+/**
+ * Измеритель-заглушка для бенчмарков: читает параметр климата среды напрямую, без собственного жизненного цикла
+ */
+public class BenchMeasurer implements Switchable, Measurer {
+	final private Measurable measured;
+	private boolean isOnline;
+
+	public BenchMeasurer(Environment env, String conditionName) {
+		this(env.getCondition(conditionName));
+	}
+
+	public BenchMeasurer(Measurable measured) {
+		this.measured = measured;
+	}
+
+	@Override
+	public String getMeasuredCharacterictic() {
+		return measured.getName();
+	}
+
+	@Override
+	public Measurable getMeasured() {
+		return measured;
+	}
+
+	@Override
+	public void powerOn() {
+		isOnline = true;
+	}
+
+	@Override
+	public void powerOff() {
+		isOnline = false;
+	}
+
+	@Override
+	public boolean isOnline() {
+		return isOnline;
+	}
+
+	@Override
+	public void showStatus() {
+	}
+}
@@ -0,0 +1,52 @@
+package device;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк записи и восстановления контрольной точки дома в зависимости от количества устройств
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckpointBenchmark {
+
+	@Param({"1000", "10000", "50000"})
+	int devices;
+
+	private Path file;
+	private Checkpoint checkpoint;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		HouseGenerator.House house = HouseGenerator.generate(devices);
+		file = Files.createTempFile("checkpoint", ".bin");
+		checkpoint = new Checkpoint(file, house.controller, house.room, house.room.getClock());
+		checkpoint.save();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		checkpoint.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public void save() throws IOException {
+		checkpoint.save();
+	}
+
+	@Benchmark
+	public long restore() throws IOException {
+		return checkpoint.restore();
+	}
+}
@@ -0,0 +1,98 @@
+package device;
+
+import device.filter.ExponentialFilter;
+import env.Condition;
+import env.EnvCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Сравнение управления опросом и по событиям.
+ * react - время реакции контроллера на выход параметра за пороги (включение) и возврат снизу в пределы точности
+ *         (выключение)
+ * idle  - процессорное время потока контроллера в доме без изменений: параметр колеблется в пределах точности
+ *         с частотой шага комнаты; controllerCpuNanos - нс процессорного времени контроллера за секунду
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class ControlReactionBenchmark {
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	@Param({"false", "true"})
+	boolean eventDriven;
+
+	@Param({"1", "10000"})
+	int measurers;
+
+	private Condition temperature;
+	private BenchInfluencer heater;
+	private Thread controllerThread;
+	private boolean jitter;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Cpu {
+		public long controllerCpuNanos;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		temperature = new Condition(EnvCondition.TEMPERATURE, 5, 45);
+		temperature.setValue(25);
+		Controller controller = new Controller("BenchController", 10);
+		for (int i = 0; i < measurers; i++) {
+			controller.attach(new BenchMeasurer(temperature));
+		}
+		heater = new BenchInfluencer(EnvCondition.TEMPERATURE, 3);
+		controller.attach(heater);
+		// время реакции измеряется по единичным изменениям значения - без фильтрации показаний
+		controller.setFilter(() -> new ExponentialFilter(1));
+		controller.setEventDriven(eventDriven);
+		controller.setPrefference(EnvCondition.TEMPERATURE, 25);
+		controllerThread = new Thread(controller, "controller");
+		controllerThread.setDaemon(true);
+		controllerThread.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		controllerThread.interrupt();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1, time = 5)
+	@Measurement(iterations = 3, time = 10)
+	@OperationsPerInvocation(2)
+	public void react() {
+		temperature.setValue(20);
+		awaitHeater(true);
+		temperature.setValue(24.9);
+		awaitHeater(false);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Warmup(iterations = 1, time = 2)
+	@Measurement(iterations = 3, time = 5)
+	public void idle(Cpu cpu) throws InterruptedException {
+		long start = THREADS.getThreadCpuTime(controllerThread.getId());
+		jitter = !jitter;
+		temperature.setValue(jitter ? 25.1 : 24.9);
+		Thread.sleep(200);
+		cpu.controllerCpuNanos += THREADS.getThreadCpuTime(controllerThread.getId()) - start;
+	}
+
+	private void awaitHeater(boolean online) {
+		while (heater.isOnline() != online) {
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package device;
+
+import env.EnvCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк основных операций цикла управления контроллера на сгенерированных домах
+ * от 10 до 100 000 устройств
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerBenchmark {
+
+	@Param({"10", "100", "1000", "10000", "100000"})
+	int devices;
+
+	private Controller controller;
+	private boolean flip;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		controller = HouseGenerator.generate(devices).controller;
+	}
+
+	/**
+	 * Желаемое значение меняется на каждом вызове, поэтому каждый раз происходит переключение устройств
+	 */
+	@Benchmark
+	public void setCondition() {
+		flip = !flip;
+		controller.setCondition(EnvCondition.TEMPERATURE, flip ? 1000 : -1000);
+	}
+
+	@Benchmark
+	public void increase() {
+		controller.increase(EnvCondition.TEMPERATURE);
+	}
+
+	@Benchmark
+	public void decrease() {
+		controller.decrease(EnvCondition.TEMPERATURE);
+	}
+
+	@Benchmark
+	public double getConditionValue() {
+		return controller.getConditionValue(EnvCondition.TEMPERATURE);
+	}
+}
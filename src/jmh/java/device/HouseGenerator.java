@@ -0,0 +1,56 @@
+package device;
+
+import env.EnvCondition;
+import env.Room;
+
+
+
+/**
+ * Генератор домов заданного размера для бенчмарков. В каждом десятке устройств три первых - измерители
+ * (по одному на параметр климата), остальные - устройства влияния, равномерно распределенные по параметрам
+ * климата и знаку воздействия.
+ */
+public final class HouseGenerator {
+
+	public static final class House {
+		public final Room room;
+		public final Controller controller;
+
+		House(Room room, Controller controller) {
+			this.room = room;
+			this.controller = controller;
+		}
+	}
+
+	private HouseGenerator() {
+	}
+
+	public static House generate(int deviceCount) {
+		Room room = new Room();
+		Controller controller = new Controller("BenchController", 10);
+		EnvCondition[] conditions = EnvCondition.values();
+		for (int i = 0; i < deviceCount; i++) {
+			EnvCondition condition = conditions[i % conditions.length];
+			if (i % 10 < conditions.length) {
+				controller.attach(new BenchMeasurer(room, condition.getName()));
+			} else {
+				double sign = (i / conditions.length) % 2 == 0 ? 1 : -1;
+				controller.attach(new BenchInfluencer(condition, sign * (1 + i % 7)));
+			}
+		}
+		return new House(room, controller);
+	}
+
+	/**
+	 * Набор устройств влияния без контроллера - для бенчмарков самой среды
+	 */
+	public static Influencer[] influencers(int deviceCount) {
+		EnvCondition[] conditions = EnvCondition.values();
+		Influencer[] influencers = new Influencer[deviceCount];
+		for (int i = 0; i < deviceCount; i++) {
+			double sign = (i / conditions.length) % 2 == 0 ? 1 : -1;
+			influencers[i] = new BenchInfluencer(conditions[i % conditions.length], sign * (1 + i % 7));
+		}
+		return influencers;
+	}
+}
@@ -0,0 +1,135 @@
+package device;
+
+import device.monitor.MeasuringDevice;
+import device.monitor.Thermometer;
+import env.Condition;
+import env.EnvCondition;
+import env.Room;
+import env.SimulationEngine;
+import env.VirtualClock;
+import log.AsyncLog;
+import log.ConsoleSink;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Сценарий регулирования температуры: комната при внешней температуре 15C, уставка 22C, нагреватель
+ * и кондиционер, час моделирования на виртуальных часах. Сравнивается управление включением и выключением
+ * с гистерезисом (устройства на полной мощности) и ПИД-регулирование мощности. Результат сценария
+ * (дополнительные счетчики):
+ * - settlingSeconds - время, после которого температура остается в пределах точности (0.5C) от уставки
+ * - overshoot - наибольшее превышение уставки после первого ее достижения, C
+ * - meanError - среднее абсолютное отклонение от уставки, C
+ * - energyWh - энергия, потребленная нагревателем и кондиционером, Вт*ч
+ * - switches - число включений и выключений устройств
+ * Время выполнения сценария - стоимость моделирования часа
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class PidScenarioBenchmark {
+	private static final double SETPOINT = 22;
+	private static final double OUTSIDE = 15;
+	private static final double ACCURACY = 0.5;
+	private static final long DURATION = 3_600_000;
+	private static final PrintStream NULL = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	@Param({"hysteresis", "pid"})
+	String strategy;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Result {
+		public double settlingSeconds;
+		public double overshoot;
+		public double meanError;
+		public double energyWh;
+		public double switches;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AsyncLog.setDefault(new AsyncLog(new ConsoleSink(NULL, NULL)));
+		MeasuringDevice.setReporting(false);
+	}
+
+	@Benchmark
+	public void scenario(Result result) {
+		VirtualClock clock = new VirtualClock(0);
+		Room room = new Room(clock, 42);
+		room.setOutSideTemp(OUTSIDE);
+		((Condition) room.getCondition(EnvCondition.TEMPERATURE.getName())).setValue(OUTSIDE);
+		SimulationEngine engine = new SimulationEngine(clock, 1);
+		engine.add(room);
+		engine.start();
+		Controller controller = new Controller("ScenarioController", 10, new DeviceRuntime(clock));
+		controller.setStatusPeriod(0);
+		controller.setAccuracy(ACCURACY);
+		Heater heater = new Heater("Heater", 2000, 3, room);
+		Conditioner conditioner = new Conditioner("Conditioner", 1500, -2, room);
+		controller.registerDevice(new Thermometer("Thermometer", 5, room));
+		controller.registerDevice(heater);
+		controller.registerDevice(conditioner);
+		if (strategy.equals("pid")) {
+			controller.setPid(EnvCondition.TEMPERATURE, PidController.forCondition(EnvCondition.TEMPERATURE));
+		} else {
+			controller.setEcoParam(100);
+		}
+		controller.setPrefference(EnvCondition.TEMPERATURE, SETPOINT);
+		controller.start();
+
+		long settled = 0;
+		boolean reached = false;
+		double overshoot = 0;
+		double energy = 0;
+		double error = 0;
+		int switches = 0;
+		boolean heaterOn = heater.isOnline();
+		boolean conditionerOn = conditioner.isOnline();
+		for (long time = 1000; time <= DURATION; time += 1000) {
+			clock.advance(1000);
+			double temperature = room.getCondition(EnvCondition.TEMPERATURE.getName()).getValue();
+			error += Math.abs(temperature - SETPOINT);
+			if (Math.abs(temperature - SETPOINT) > ACCURACY) settled = time;
+			if (temperature >= SETPOINT) reached = true;
+			if (reached) overshoot = Math.max(overshoot, temperature - SETPOINT);
+			energy += (consumption(heater) + consumption(conditioner)) / 3600;
+			if (heater.isOnline() != heaterOn) switches++;
+			if (conditioner.isOnline() != conditionerOn) switches++;
+			heaterOn = heater.isOnline();
+			conditionerOn = conditioner.isOnline();
+		}
+		controller.stop();
+		engine.stop();
+		result.settlingSeconds = settled / 1000.0;
+		result.overshoot = overshoot;
+		result.meanError = error / (DURATION / 1000);
+		result.energyWh = energy;
+		result.switches = switches;
+	}
+
+	/**
+	 * потребляемая мощность устройства, Вт
+	 */
+	private static double consumption(ElectronicDevice device) {
+		Influencer influencer = (Influencer) device;
+		if (!device.isOnline()) return 0;
+		return influencer.getActualInfluence() / influencer.getMaxInfluence() * device.power;
+	}
+}
@@ -0,0 +1,115 @@
+package device;
+
+import env.EnvCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк перепланирования ограничения мощности от 1000 до 100 000 регулируемых устройств влияния.
+ * На каждом вызове отклонения параметров климата (веса групп) немного меняются, и мощность распределяется заново:
+ * - replan - {@link PowerBudget}: двоичный поиск порога ценности ватта по суммам префиксов групп,
+ *   мощность меняется только у устройств между прежней и новой границей префикса
+ * - fullReplan - наивное распределение: ценность ватта всех устройств, сортировка и заполнение ограничения
+ *   по порядку с заданием мощности каждому устройству
+ * Ограничение - 30% суммарной мощности устройств, все группы запрашивают полную мощность.
+ * Устройства (fleet): random - случайные мощность и воздействие, identical - одна модель у всех устройств
+ * (одинаковое воздействие на ватт внутри группы - остаток ограничения приходится на блок равноценных устройств)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PowerBudgetBenchmark {
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+	private static final int GROUPS = CONDITIONS.length * 2;
+
+	@Param({"1000", "10000", "100000"})
+	int devices;
+
+	@Param({"random", "identical"})
+	String fleet;
+
+	private DeviceRegistry registry;
+	private BenchAdjustable[] adjustables;
+	private int[] groupOf;
+	private double[] density;
+	private double cap;
+	private final double[] weights = new double[GROUPS];
+	private final Random random = new Random(42);
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		registry = new DeviceRegistry();
+		adjustables = new BenchAdjustable[devices];
+		groupOf = new int[devices];
+		density = new double[devices];
+		double total = 0;
+		for (int i = 0; i < devices; i++) {
+			int group = i % GROUPS;
+			int sign = group % 2 == 0 ? Influencer.NEGATIVE_INFLUENCE : Influencer.POSITIVE_INFLUENCE;
+			boolean identical = "identical".equals(fleet);
+			int watts = identical ? 1000 : 50 + random.nextInt(2000);
+			double influence = sign * (identical ? 2 : 0.5 + random.nextDouble() * 5);
+			adjustables[i] = new BenchAdjustable(CONDITIONS[group / 2], influence, watts);
+			groupOf[i] = group;
+			density[i] = Math.abs(influence) / watts;
+			total += watts;
+			adjustables[i].powerOn();
+			registry.add(adjustables[i]);
+		}
+		cap = total * 0.3;
+		for (int group = 0; group < GROUPS; group++) {
+			weights[group] = 1 + random.nextDouble() * 4;
+		}
+		registry.planPower(cap);
+	}
+
+	/**
+	 * Небольшое случайное изменение отклонения одного параметра
+	 */
+	private void perturb() {
+		int group = random.nextInt(GROUPS);
+		weights[group] = Math.max(0.1, weights[group] + (random.nextDouble() - 0.5) * 0.2);
+	}
+
+	@Benchmark
+	public int replan() {
+		perturb();
+		for (int group = 0; group < GROUPS; group++) {
+			int sign = group % 2 == 0 ? Influencer.NEGATIVE_INFLUENCE : Influencer.POSITIVE_INFLUENCE;
+			registry.setDemand(CONDITIONS[group / 2], sign, 1, weights[group]);
+		}
+		return registry.planPower(cap);
+	}
+
+	@Benchmark
+	public int fullReplan() {
+		perturb();
+		Integer[] order = new Integer[devices];
+		double[] value = new double[devices];
+		for (int i = 0; i < devices; i++) {
+			order[i] = i;
+			value[i] = weights[groupOf[i]] * density[i];
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(value[b], value[a]));
+		double remaining = cap;
+		int changed = 0;
+		for (Integer i : order) {
+			BenchAdjustable device = adjustables[i];
+			double watts = Math.min(remaining, device.power);
+			remaining -= watts;
+			int factor = (int) (watts * 100 / device.power);
+			if (device.getPowerFactor() == factor) continue;
+			device.setPowerFactor(factor);
+			changed++;
+		}
+		return changed;
+	}
+}
@@ -0,0 +1,65 @@
+package device;
+
+import env.EnvCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк смены желаемых значений всех параметров климата во всех помещениях здания (по 1000 устройств
+ * в помещении, в большом здании - не более 100 000 устройств на все здание). Значения меняются на каждом вызове, поэтому каждый раз переключаются все устройства влияния:
+ * - oneByOne - по одному изменению: {@link Controller#setPrefference} и {@link Controller#setCondition}
+ * - batch - один {@link PreferenceBatch} на все здание
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreferenceBatchBenchmark {
+	private static final int DEVICES = 1000;
+	private static final int BUILDING_DEVICES = 100_000;
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+
+	@Param({"1", "10", "100", "5000"})
+	int rooms;
+
+	private Controller[] controllers;
+	private final PreferenceBatch batch = new PreferenceBatch();
+	private boolean flip;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		controllers = new Controller[rooms];
+		for (int i = 0; i < rooms; i++) {
+			controllers[i] = HouseGenerator.generate(Math.min(DEVICES, BUILDING_DEVICES / rooms)).controller;
+		}
+	}
+
+	@Benchmark
+	public void oneByOne() {
+		flip = !flip;
+		double value = flip ? 1000 : -1000;
+		for (Controller controller : controllers) {
+			for (EnvCondition condition : CONDITIONS) {
+				controller.setPrefference(condition, value);
+				controller.setCondition(condition, value);
+			}
+		}
+	}
+
+	@Benchmark
+	public int batch() {
+		flip = !flip;
+		double value = flip ? 1000 : -1000;
+		for (Controller controller : controllers) {
+			for (EnvCondition condition : CONDITIONS) {
+				batch.set(controller, condition, value);
+			}
+		}
+		return batch.apply();
+	}
+}
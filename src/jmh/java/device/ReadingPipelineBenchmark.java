@@ -0,0 +1,141 @@
+package device;
+
+import env.Condition;
+import env.EnvCondition;
+import env.Measurable;
+import metrics.LatencyHistogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+
+/**
+ * Бенчмарк передачи показаний от измерителя контроллеру: поток бенчмарка публикует показания с заданной
+ * скоростью (rate, показаний в секунду, пачками по {@link #BURST}; 0 - с наибольшей), поток чтения забирает
+ * их пакетами (до {@link ReadingRing#DEFAULT_BATCH}) и записывает задержку от публикации до обработки
+ * в гистограмму. С наибольшей скоростью задержка определяется заполненностью буфера, поэтому распределение
+ * задержки показательно при заданной скорости.
+ * - ring - {@link ReadingRing}
+ * - queue - {@link ArrayBlockingQueue} той же емкости: объект на показание, take и drainTo
+ * Результат - показаний в секунду и распределение задержки за итерацию (дополнительные счетчики p50Micros,
+ * p99Micros, p999Micros, maxMicros). Запуск с -prof gc показывает выделение памяти на показание
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadingPipelineBenchmark {
+	private static final int CAPACITY = 1 << 16;
+	private static final Measurable SOURCE = new Condition(EnvCondition.TEMPERATURE, 0, 50);
+	private static final int BURST = 1000;
+
+	@Param({"ring", "queue"})
+	String pipeline;
+
+	@Param({"1000000", "0"})
+	long rate;
+
+	private ReadingRing ring;
+	private ReadingRing.Reader reader;
+	private BlockingQueue<ReadingRing.Reading> queue;
+	private Thread consumer;
+	private volatile boolean running;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private long published;
+	private long next;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Latency {
+		public double p50Micros;
+		public double p99Micros;
+		public double p999Micros;
+		public double maxMicros;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		running = true;
+		if (pipeline.equals("ring")) {
+			ring = new ReadingRing(CAPACITY);
+			reader = ring.newReader();
+			consumer = new Thread(() -> reader.run((source, value, endOfBatch) ->
+					latency.record(System.nanoTime() - (long) value), ReadingRing.DEFAULT_BATCH), "ring-reader");
+		} else {
+			queue = new ArrayBlockingQueue<>(CAPACITY);
+			consumer = new Thread(this::drainQueue, "queue-reader");
+		}
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	private void drainQueue() {
+		List<ReadingRing.Reading> batch = new ArrayList<>(ReadingRing.DEFAULT_BATCH);
+		try {
+			while (running) {
+				batch.add(queue.take());
+				queue.drainTo(batch, ReadingRing.DEFAULT_BATCH - 1);
+				for (ReadingRing.Reading reading : batch) {
+					latency.record(System.nanoTime() - (long) reading.value);
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// остановка
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		running = false;
+		if (reader != null) reader.halt();
+		consumer.interrupt();
+		consumer.join(1000);
+	}
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		latency.reset();
+		next = System.nanoTime();
+	}
+
+	@TearDown(Level.Iteration)
+	public void report(Latency result) {
+		result.p50Micros = latency.getP50Micros();
+		result.p99Micros = latency.getP99Micros();
+		result.p999Micros = latency.percentile(0.999) / 1000.0;
+		result.maxMicros = latency.getMaxMicros();
+	}
+
+	@Benchmark
+	public void publish() throws InterruptedException {
+		if (ring != null) {
+			ring.publish(SOURCE, System.nanoTime());
+		} else {
+			ReadingRing.Reading reading = new ReadingRing.Reading();
+			reading.source = SOURCE;
+			reading.value = System.nanoTime();
+			queue.put(reading);
+		}
+		if (rate > 0 && ++published % BURST == 0) pace();
+	}
+
+	/**
+	 * Ожидание времени следующей пачки (поток чтения может работать и на одном ядре)
+	 */
+	private void pace() {
+		next += BURST * 1_000_000_000L / rate;
+		long wait;
+		while ((wait = next - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(wait);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package device;
+
+import env.EnvCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк оценки правил автоматизации при изменении значения параметра климата, от 1000 до 300 000 правил
+ * с двумя условиями сравнения (параметры и пороги случайны в диапазонах параметров). На каждом вызове одно
+ * значение делает шаг случайного блуждания (как отфильтрованное показание измерителя), и выполняются
+ * действия правил, сменивших состояние:
+ * - incremental - {@link RuleEngine}: пересчет условий, пороги которых лежат между прежним и новым значением
+ * - scan - наивная оценка всех правил по текущим значениям при каждом изменении
+ * В flips - число правил, сменивших состояние, на вызов (одинаково для обоих способов)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleEngineBenchmark {
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+	private static final double[] MIN = {10, 20, 0};
+	private static final double[] MAX = {35, 90, 1000};
+	private static final int PER_RULE = 2;
+
+	@Param({"1000", "100000", "300000"})
+	int rules;
+
+	private RuleEngine engine;
+	private int[] condition;
+	private boolean[] above;
+	private double[] threshold;
+	private boolean[] holds;
+	private final double[] values = new double[CONDITIONS.length];
+	private final Random random = new Random(42);
+	private int next;
+	private long flips;
+	private long calls;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Flips {
+		public double flips;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		engine = new RuleEngine(null);
+		condition = new int[rules * PER_RULE];
+		above = new boolean[rules * PER_RULE];
+		threshold = new double[rules * PER_RULE];
+		holds = new boolean[rules];
+		BenchInfluencer target = new BenchInfluencer(EnvCondition.HUMIDITY, 1);
+		for (int c = 0; c < values.length; c++) {
+			values[c] = (MIN[c] + MAX[c]) / 2;
+			engine.update(CONDITIONS[c], values[c]);
+		}
+		for (int r = 0; r < rules; r++) {
+			RuleEngine.Rule rule = new RuleEngine.Rule();
+			for (int k = r * PER_RULE; k < (r + 1) * PER_RULE; k++) {
+				condition[k] = random.nextInt(CONDITIONS.length);
+				above[k] = random.nextBoolean();
+				threshold[k] = MIN[condition[k]] + random.nextDouble() * (MAX[condition[k]] - MIN[condition[k]]);
+				if (above[k]) rule.above(CONDITIONS[condition[k]], threshold[k]);
+				else rule.below(CONDITIONS[condition[k]], threshold[k]);
+			}
+			engine.add(rule.then(target, 50).otherwise(RuleEngine.OFF));
+			holds[r] = evaluate(r);
+		}
+		engine.drain((device, factor) -> { });
+	}
+
+	@TearDown(Level.Iteration)
+	public void report(Flips counters) {
+		counters.flips = calls == 0 ? 0 : (double) flips / calls;
+		flips = 0;
+		calls = 0;
+	}
+
+	/**
+	 * Шаг случайного блуждания значения очередного параметра: около 0.2% диапазона
+	 */
+	private int step() {
+		int c = next++ % CONDITIONS.length;
+		double range = MAX[c] - MIN[c];
+		double value = values[c] + (random.nextDouble() - 0.5) * range * 0.004;
+		values[c] = Math.max(MIN[c], Math.min(MAX[c], value));
+		calls++;
+		return c;
+	}
+
+	private boolean evaluate(int rule) {
+		for (int k = rule * PER_RULE; k < (rule + 1) * PER_RULE; k++) {
+			double value = values[condition[k]];
+			if (above[k] ? value <= threshold[k] : value >= threshold[k]) return false;
+		}
+		return true;
+	}
+
+	@Benchmark
+	public int incremental() {
+		int c = step();
+		engine.update(CONDITIONS[c], values[c]);
+		int fired = engine.drain((device, factor) -> { });
+		flips += fired;
+		return fired;
+	}
+
+	@Benchmark
+	public int scan() {
+		step();
+		int fired = 0;
+		for (int r = 0; r < rules; r++) {
+			boolean now = evaluate(r);
+			if (now == holds[r]) continue;
+			holds[r] = now;
+			fired++;
+		}
+		flips += fired;
+		return fired;
+	}
+}
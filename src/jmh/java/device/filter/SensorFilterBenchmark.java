@@ -0,0 +1,79 @@
+package device.filter;
+
+import env.Condition;
+import env.EnvCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк обновления фильтров показаний и объединенного значения параметра по нескольким источникам.
+ * Запуск с -prof gc показывает отсутствие выделения памяти при обновлении
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorFilterBenchmark {
+
+	private final ExponentialFilter exponential = new ExponentialFilter(0.1);
+	private final MedianFilter median = new MedianFilter(5);
+	private final MedianFilter wideMedian = new MedianFilter(31);
+	private final KalmanFilter kalman = new KalmanFilter(0.01, 1);
+	private FusedCondition fused;
+	private Condition[] sources;
+	private long random = 42;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		fused = new FusedCondition(() -> new KalmanFilter(0.01, 1), null);
+		sources = new Condition[8];
+		for (int i = 0; i < sources.length; i++) {
+			sources[i] = new Condition(EnvCondition.TEMPERATURE, -50, 100);
+			sources[i].setValue(20 + i);
+			fused.add(sources[i]);
+		}
+	}
+
+	private double sample() {
+		random ^= random << 13;
+		random ^= random >>> 7;
+		random ^= random << 17;
+		return 20 + (random & 0xff) / 64.0;
+	}
+
+	@Benchmark
+	public double exponential() {
+		return exponential.update(sample());
+	}
+
+	@Benchmark
+	public double median() {
+		return median.update(sample());
+	}
+
+	@Benchmark
+	public double wideMedian() {
+		return wideMedian.update(sample());
+	}
+
+	@Benchmark
+	public double kalman() {
+		return kalman.update(sample());
+	}
+
+	/**
+	 * показание одного из источников и чтение объединенного значения
+	 */
+	@Benchmark
+	public double fused() {
+		Condition source = sources[next++ & (sources.length - 1)];
+		source.setValue(sample());
+		return fused.getValue();
+	}
+}
@@ -0,0 +1,109 @@
+package device.monitor;
+
+import device.Controller;
+import env.EnvCondition;
+import log.AsyncLog;
+import log.ConsoleSink;
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+
+
+/**
+ * Генератор нагрузки шлюза {@link SensorGateway} через loopback: несколько соединений непрерывно пишут
+ * заранее закодированные кадры показаний удаленных измерителей, зарегистрированных в контроллере
+ * (работа по событиям, фильтр Калмана по умолчанию). Результат - показаний в секунду и показаний в секунду
+ * процессорного времени потока шлюза (на ядро), память, выделенная потоком шлюза на показание.
+ *
+ * Запуск: java -cp target/benchmarks.jar device.monitor.SensorLoadGenerator [соединений] [секунд] [измерителей]
+ */
+public class SensorLoadGenerator {
+	private static final int BATCH = 4096;
+	private static final PrintStream NULL = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int sensorCount = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		AsyncLog.setDefault(new AsyncLog(new ConsoleSink(NULL, NULL)));
+		MeasuringDevice.setReporting(false);
+
+		EnvCondition[] conditions = EnvCondition.values();
+		Controller controller = new Controller("LoadController", 10);
+		controller.setEventDriven(true);
+		controller.setStatusPeriod(0);
+		SensorGateway gateway = new SensorGateway(new InetSocketAddress("127.0.0.1", 0));
+		for (int i = 0; i < sensorCount; i++) {
+			RemoteSensor sensor = new RemoteSensor("Remote" + i, 1, conditions[i % conditions.length], 20);
+			controller.registerDevice(sensor);
+			gateway.register(sensor);
+		}
+		for (EnvCondition condition : conditions) {
+			controller.setPrefference(condition, 20);
+		}
+		controller.start();
+
+		List<Thread> senders = new ArrayList<>();
+		for (int c = 0; c < connections; c++) {
+			ByteBuffer frames = ByteBuffer.allocateDirect(BATCH * SensorGateway.FRAME);
+			for (int i = 0; i < BATCH; i++) {
+				frames.putInt((i * 31 + c) % sensorCount).putDouble(20 + (i % 7) * 0.3);
+			}
+			frames.flip();
+			SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", gateway.getPort()));
+			Thread sender = new Thread(() -> send(channel, frames), "sender-" + c);
+			sender.setDaemon(true);
+			senders.add(sender);
+		}
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long id = gateway.getThread().getId();
+		senders.forEach(Thread::start);
+		Thread.sleep(1000);
+
+		long readings = gateway.getReadings();
+		long cpu = threads.getThreadCpuTime(id);
+		long allocated = threads.getThreadAllocatedBytes(id);
+		long started = System.nanoTime();
+		Thread.sleep(seconds * 1000L);
+		double elapsed = (System.nanoTime() - started) / 1e9;
+		double received = gateway.getReadings() - readings;
+		double cpuSeconds = (threads.getThreadCpuTime(id) - cpu) / 1e9;
+		double bytes = threads.getThreadAllocatedBytes(id) - allocated;
+		System.out.printf("%d connections, %d sensors, %d cores: %.0f readings/s, %.0f readings per gateway cpu-second"
+						+ " (gateway thread %.0f%% busy), %.3f bytes allocated per reading, rejected %d%n",
+				connections, sensorCount, Runtime.getRuntime().availableProcessors(), received / elapsed,
+				received / cpuSeconds, cpuSeconds / elapsed * 100, bytes / received, gateway.getRejected());
+		gateway.close();
+		controller.stop();
+	}
+
+	private static void send(SocketChannel channel, ByteBuffer frames) {
+		try {
+			while (true) {
+				ByteBuffer batch = frames.duplicate();
+				while (batch.hasRemaining()) {
+					channel.write(batch);
+				}
+			}
+		} catch (IOException e) {
+			// шлюз закрыт
+		}
+	}
+}
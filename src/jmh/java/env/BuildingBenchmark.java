@@ -0,0 +1,57 @@
+package env;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк шага здания: этажи по 100 комнат (сетка 10 x 10), соседние комнаты этажа связаны стенами
+ * (коэффициент 0.01), комнаты соседних этажей - перекрытиями (0.005). Шаг - теплообмен (произведение
+ * разреженной матрицы на вектор) и шаг всех комнат в пуле fork/join из parallelism потоков
+ * (0 - общий пул). Бюджет шага - {@link SimulationEngine#TICK_PERIOD} мс
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildingBenchmark {
+	private static final int SIDE = 10;
+	private static final int FLOOR = SIDE * SIDE;
+
+	@Param({"1000", "10000", "50000"})
+	int rooms;
+
+	@Param({"1", "0"})
+	int parallelism;
+
+	private ForkJoinPool pool;
+	private Building building;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		pool = parallelism == 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism);
+		building = new Building(new VirtualClock(0), rooms, 42, pool);
+		for (int room = 0; room < rooms; room++) {
+			int x = room % SIDE, y = room % FLOOR / SIDE;
+			if (x + 1 < SIDE && room + 1 < rooms) building.connect(room, room + 1, 0.01);
+			if (y + 1 < SIDE && room + SIDE < rooms) building.connect(room, room + SIDE, 0.01);
+			if (room + FLOOR < rooms) building.connect(room, room + FLOOR, 0.005);
+		}
+		building.tick();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (pool != ForkJoinPool.commonPool()) pool.shutdown();
+	}
+
+	@Benchmark
+	public void tick() {
+		building.tick();
+	}
+}
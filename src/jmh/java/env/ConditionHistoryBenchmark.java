@@ -0,0 +1,53 @@
+package env;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк записи значения и запросов к истории параметра (gc.alloc.rate.norm должен быть ~0 B/op)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConditionHistoryBenchmark {
+
+	@Param({"false", "true"})
+	boolean offHeap;
+
+	private ConditionHistory history;
+	private long time;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		history = new ConditionHistory(offHeap);
+		for (int i = 0; i < 100_000; i++) {
+			history.record(time += 200, 20 + i % 10);
+		}
+	}
+
+	@Benchmark
+	public void record() {
+		history.record(time += 200, 21.5);
+	}
+
+	@Benchmark
+	public double avgLastTenMinutes() {
+		return history.avg(time - 10 * ConditionHistory.MINUTE, time);
+	}
+
+	@Benchmark
+	public double maxLastDay() {
+		return history.max(time - 24 * ConditionHistory.HOUR, time);
+	}
+
+	@Benchmark
+	public double percentileLastHour() {
+		return history.percentile(time - ConditionHistory.HOUR, time, 0.9);
+	}
+}
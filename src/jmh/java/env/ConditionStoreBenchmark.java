@@ -0,0 +1,58 @@
+package env;
+
+import device.HouseGenerator;
+import device.Influencer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк шага множества комнат: каждая комната со своим хранилищем и шагом по отдельности (rooms)
+ * против общего хранилища с шагом одним пакетом по столбцам (store). Частота шагов комнат = ops/s * rooms
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConditionStoreBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	int rooms;
+
+	@Param({"0", "10"})
+	int devicesPerRoom;
+
+	private Room[] separate;
+	private ConditionStore store;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		VirtualClock clock = new VirtualClock(0);
+		separate = new Room[rooms];
+		store = new ConditionStore(rooms);
+		for (int i = 0; i < rooms; i++) {
+			separate[i] = new Room(clock, i);
+			Room shared = new Room(store, clock, i);
+			for (Influencer influencer : HouseGenerator.influencers(devicesPerRoom)) {
+				separate[i].addInfluencer(influencer);
+				shared.addInfluencer(influencer);
+			}
+		}
+	}
+
+	@Benchmark
+	public void rooms() {
+		for (Room room : separate) {
+			room.tick();
+		}
+	}
+
+	@Benchmark
+	public void store() {
+		store.step();
+	}
+}
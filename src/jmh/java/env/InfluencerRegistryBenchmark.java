@@ -0,0 +1,136 @@
+package env;
+
+import device.Influencer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Нагрузочный тест и бенчмарк реестра устройств влияния комнаты: потоки устройств непрерывно добавляют,
+ * изменяют мощность и удаляют свои устройства (churn), пока поток комнаты выполняет шаги (tick).
+ * По окончании каждой итерации сумма воздействия в хранилище сверяется с суммой по реестру - расхождение
+ * (потерянное обновление) завершает бенчмарк ошибкой.
+ *
+ * Без блокировок выполняются только шаг комнаты и чтение реестра; изменения реестра
+ * ({@link Room#addInfluencer}, {@link Room#removeInfluencer}, {@link Room#influenceChanged}) синхронизированы
+ * монитором комнаты, поэтому потоки устройств конкурируют между собой, но не с шагом. В проекте нет тестов
+ * сборки, и проверка согласованности выполняется только этим бенчмарком (профиль benchmark):
+ * {@code java -jar target/benchmarks.jar InfluencerRegistryBenchmark}
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InfluencerRegistryBenchmark {
+	private static final double EPSILON = 1e-6;
+
+	@Param({"10", "1000"})
+	int devicesPerThread;
+
+	private Room room;
+
+	/**
+	 * Устройство с изменяемым воздействием
+	 */
+	static class VaryingInfluencer implements Influencer {
+		final EnvCondition influenced;
+		volatile double actual;
+
+		VaryingInfluencer(EnvCondition influenced) {
+			this.influenced = influenced;
+		}
+
+		@Override
+		public double getMaxInfluence() {
+			return 10;
+		}
+
+		@Override
+		public double getActualInfluence() {
+			return actual;
+		}
+
+		@Override
+		public EnvCondition getInfluenced() {
+			return influenced;
+		}
+	}
+
+	/**
+	 * Устройства одного потока - каждое устройство изменяется только своим потоком
+	 */
+	@State(Scope.Thread)
+	public static class Devices {
+		VaryingInfluencer[] devices;
+		int next;
+		int operation;
+
+		@Setup(Level.Trial)
+		public void setUp(InfluencerRegistryBenchmark benchmark, ThreadParams params) {
+			EnvCondition[] conditions = EnvCondition.values();
+			devices = new VaryingInfluencer[benchmark.devicesPerThread];
+			for (int i = 0; i < devices.length; i++) {
+				devices[i] = new VaryingInfluencer(conditions[(i + params.getThreadIndex()) % conditions.length]);
+				devices[i].actual = 1 + i % 7;
+			}
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		room = new Room(new VirtualClock(0), 1);
+	}
+
+	@TearDown(Level.Iteration)
+	public void verify() {
+		for (EnvCondition condition : EnvCondition.values()) {
+			double expected = 0;
+			for (Influencer influencer : room.getInfluencers()) {
+				if (influencer.getInfluenced() == condition) expected += influencer.getActualInfluence();
+			}
+			double actual = room.getInfluence(condition);
+			if (Math.abs(expected - actual) > EPSILON * Math.max(1, Math.abs(expected))) {
+				throw new IllegalStateException(String.format("%s influence %f, registry sum %f",
+						condition.getName(), actual, expected));
+			}
+		}
+	}
+
+	/**
+	 * Цикл устройства: включение, изменение мощности, выключение
+	 */
+	@Benchmark
+	@Group("churn")
+	@GroupThreads(3)
+	public void register(Devices state) {
+		VaryingInfluencer device = state.devices[state.next];
+		switch (state.operation) {
+			case 0:
+				room.addInfluencer(device);
+				break;
+			case 1:
+				device.actual = device.actual * 1.5;
+				room.influenceChanged(device);
+				break;
+			default:
+				room.removeInfluencer(device);
+				device.actual = 1 + state.next % 7;
+		}
+		if (++state.next == state.devices.length) {
+			state.next = 0;
+			state.operation = (state.operation + 1) % 3;
+		}
+	}
+
+	@Benchmark
+	@Group("churn")
+	@GroupThreads(1)
+	public void tick() {
+		room.tick();
+	}
+}
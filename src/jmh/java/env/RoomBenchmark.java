@@ -0,0 +1,39 @@
+package env;
+
+import device.HouseGenerator;
+import device.Influencer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк одного шага изменения климата в комнате в зависимости от количества устройств влияния
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomBenchmark {
+
+	@Param({"10", "100", "1000", "10000", "100000"})
+	int devices;
+
+	private Room room;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		room = new Room();
+		for (Influencer influencer : HouseGenerator.influencers(devices)) {
+			room.addInfluencer(influencer);
+		}
+	}
+
+	@Benchmark
+	public void update() {
+		room.tick();
+	}
+}
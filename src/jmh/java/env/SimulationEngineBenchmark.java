@@ -0,0 +1,52 @@
+package env;
+
+import device.HouseGenerator;
+import device.Influencer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк синхронного шага движка моделирования по всем комнатам.
+ * Частота шагов комнат = ops/s * rooms
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationEngineBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	int rooms;
+
+	@Param({"10"})
+	int devicesPerRoom;
+
+	private SimulationEngine engine;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		engine = new SimulationEngine();
+		for (int i = 0; i < rooms; i++) {
+			Room room = new Room();
+			for (Influencer influencer : HouseGenerator.influencers(devicesPerRoom)) {
+				room.addInfluencer(influencer);
+			}
+			engine.add(room);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		engine.shutdown();
+	}
+
+	@Benchmark
+	public void step() throws InterruptedException {
+		engine.step();
+	}
+}
@@ -0,0 +1,117 @@
+package env;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк таймеров расписаний: от 10 000 до 2 000 000 таймеров (например, расписаний уставок во многих
+ * домах), каждый после срабатывания планируется заново на случайный момент в пределах суток. Такт - 1 с:
+ * - wheel - {@link TimingWheel}: продвижение колеса на один такт со срабатыванием и повторным планированием
+ * - heap - двоичная куча по времени срабатывания (как {@link java.util.concurrent.ScheduledThreadPoolExecutor}):
+ *   извлечение наступивших таймеров и повторная вставка, O(log n)
+ * - reschedule - перенос случайного таймера колеса на новый момент (отмена и вставка, O(1))
+ * В expired - число срабатываний на вызов (одинаково для колеса и кучи)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class TimingWheelBenchmark {
+	private static final long TICK = 1000;
+	private static final long DAY = 24 * ConditionHistory.HOUR;
+	private static final int DELAYS = 1 << 16;
+
+	@Param({"10000", "2000000"})
+	int timers;
+
+	private final long[] delays = new long[DELAYS];
+	private int nextDelay;
+	private long now;
+	private long expired;
+	private long calls;
+
+	private TimingWheel wheel;
+	private WheelTimer[] wheelTimers;
+	private PriorityQueue<HeapTimer> heap;
+
+	private final class WheelTimer extends TimingWheel.Timer {
+		@Override
+		protected void expire() {
+			expired++;
+			wheel.schedule(this, now + delay());
+		}
+	}
+
+	private static final class HeapTimer {
+		long time;
+	}
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Expired {
+		public double expired;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		for (int i = 0; i < DELAYS; i++) delays[i] = 1 + (long) (random.nextDouble() * DAY);
+		wheel = new TimingWheel(new VirtualClock(0), TICK);
+		wheelTimers = new WheelTimer[timers];
+		heap = new PriorityQueue<>(timers, (a, b) -> Long.compare(a.time, b.time));
+		for (int i = 0; i < timers; i++) {
+			wheelTimers[i] = new WheelTimer();
+			wheel.schedule(wheelTimers[i], delay());
+			HeapTimer timer = new HeapTimer();
+			timer.time = delay();
+			heap.add(timer);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void report(Expired counters) {
+		counters.expired = calls == 0 ? 0 : (double) expired / calls;
+		expired = 0;
+		calls = 0;
+	}
+
+	private long delay() {
+		return delays[nextDelay++ & (DELAYS - 1)];
+	}
+
+	@Benchmark
+	public long wheel() {
+		now += TICK;
+		calls++;
+		wheel.advance(now);
+		return expired;
+	}
+
+	@Benchmark
+	public long heap() {
+		now += TICK;
+		calls++;
+		HeapTimer timer;
+		while ((timer = heap.peek()) != null && timer.time <= now) {
+			heap.poll();
+			expired++;
+			timer.time = now + delay();
+			heap.add(timer);
+		}
+		return expired;
+	}
+
+	@Benchmark
+	public boolean reschedule() {
+		WheelTimer timer = wheelTimers[(int) (delay() % timers)];
+		wheel.schedule(timer, now + delay());
+		return timer.isScheduled();
+	}
+}
@@ -0,0 +1,55 @@
+package log;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Стоимость сообщения для вызывающего потока: асинхронный журнал против прежнего
+ * String.format + синхронизированного println. Вывод направляется в никуда, чтобы измерялась
+ * только работа и конкуренция вызывающих потоков
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class AsyncLogBenchmark {
+	private static final PrintStream NULL = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	private AsyncLog log;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		log = new AsyncLog(new ConsoleSink(NULL, NULL), 65536, 1024);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		log.close();
+	}
+
+	@Benchmark
+	public void asyncLog() {
+		log.log(AsyncLog.INFO, "SunHeat", "heating at %d%% power", 40);
+	}
+
+	@Benchmark
+	public void formatAndPrintln() {
+		NULL.println(String.format("%s: %s", "SunHeat", String.format("heating at %d%% power", 40)));
+	}
+}
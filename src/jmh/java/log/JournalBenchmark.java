@@ -0,0 +1,76 @@
+package log;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк записи команд с подтверждением записи на диск несколькими потоками: журнал с групповым fsync
+ * против fsync на каждую запись. Решения контроллера записываются без ожидания (decision)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class JournalBenchmark {
+
+	private Path journalFile;
+	private Path plainFile;
+	private Journal journal;
+	private FileChannel plain;
+
+	@State(Scope.Thread)
+	public static class Record {
+		final ByteBuffer buffer = ByteBuffer.allocate(32);
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		journalFile = Files.createTempFile("journal", ".bin");
+		Files.delete(journalFile);
+		journal = new Journal(journalFile);
+		plainFile = Files.createTempFile("journal-plain", ".bin");
+		plain = FileChannel.open(plainFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		journal.close();
+		plain.close();
+		Files.deleteIfExists(journalFile);
+		Files.deleteIfExists(plainFile);
+	}
+
+	@Benchmark
+	public void groupCommit() throws IOException {
+		journal.command(System.currentTimeMillis(), "temp", 25, true);
+	}
+
+	@Benchmark
+	public void fsyncEach(Record record) throws IOException {
+		ByteBuffer buffer = record.buffer;
+		buffer.clear();
+		buffer.putLong(System.currentTimeMillis()).put(Journal.COMMAND).putFloat(25).put((byte) 1).put((byte) 't');
+		buffer.flip();
+		synchronized (this) {
+			plain.write(buffer);
+			plain.force(false);
+		}
+	}
+
+	@Benchmark
+	public void decision() {
+		journal.decision(System.currentTimeMillis(), 0, 1, true, 1);
+	}
+}
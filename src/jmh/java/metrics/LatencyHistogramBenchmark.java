@@ -0,0 +1,50 @@
+package metrics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк записи в гистограмму задержек: стоимость записи одним и несколькими потоками
+ * по сравнению с одним замером времени. Запуск с -prof gc показывает отсутствие выделения памяти при записи
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		for (int i = 0; i < 100_000; i++) {
+			histogram.record(1000 + i % 50_000);
+		}
+	}
+
+	@Benchmark
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	@Benchmark
+	public void recordSince() {
+		histogram.recordSince(System.nanoTime() - 1000);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordSinceContended() {
+		histogram.recordSince(System.nanoTime() - 1000);
+	}
+
+	@Benchmark
+	public double p99() {
+		return histogram.getP99Micros();
+	}
+}
@@ -0,0 +1,82 @@
+package metrics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Бенчмарк сервера показаний: время получения снимка /metrics при заданном числе подключенных подписчиков
+ * потока событий, которые не читают события (худший случай - сервер должен пропускать для них события,
+ * а не накапливать). События публикуются каждые 100 мс
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelemetryServerBenchmark {
+	private static final byte[] EVENTS = "GET /events HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] METRICS = "GET /metrics HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	@Param({"0", "1000", "5000"})
+	int subscribers;
+
+	private TelemetryServer server;
+	private InetSocketAddress address;
+	private final List<SocketChannel> streams = new ArrayList<>();
+	private final ByteBuffer response = ByteBuffer.allocateDirect(64 * 1024);
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = new TelemetryServer(new InetSocketAddress("127.0.0.1", 0), 100);
+		for (int house = 0; house < 10; house++) {
+			server.add("house" + house, writer -> {
+				writer.condition("temperature", 21.5, 22);
+				writer.condition("relative humidity", 55, 60);
+				for (int device = 0; device < 20; device++) {
+					writer.device("device" + device, device % 2 == 0, device % 3 == 0 ? 50 : -1);
+				}
+			});
+		}
+		address = new InetSocketAddress("127.0.0.1", server.getPort());
+		for (int i = 0; i < subscribers; i++) {
+			SocketChannel stream = SocketChannel.open(address);
+			stream.write(ByteBuffer.wrap(EVENTS));
+			streams.add(stream);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		for (SocketChannel stream : streams) {
+			stream.close();
+		}
+		streams.clear();
+		server.close();
+	}
+
+	@Benchmark
+	public int scrape() throws IOException {
+		int length = 0;
+		try (SocketChannel channel = SocketChannel.open(address)) {
+			channel.write(ByteBuffer.wrap(METRICS));
+			int read;
+			while ((read = channel.read(response)) >= 0) {
+				length += read;
+				response.clear();
+			}
+		}
+		response.clear();
+		return length;
+	}
+}
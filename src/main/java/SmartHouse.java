@@ -1,14 +1,34 @@
 import device.*;
+import device.filter.ExponentialFilter;
+import device.filter.KalmanFilter;
+import device.filter.MedianFilter;
+import device.filter.SensorFilter;
 import device.monitor.HumiditySensor;
 import device.monitor.LightSensor;
+import device.monitor.MeasuringDevice;
+import device.monitor.RemoteSensor;
+import device.monitor.SensorGateway;
 import device.monitor.Thermometer;
+import env.ConditionHistory;
 import env.EnvCondition;
 import env.Environment;
 import env.Room;
+import env.SimulationEngine;
+import env.VirtualClock;
+import log.AsyncLog;
+import log.Journal;
+import log.RollingFileSink;
+import metrics.TelemetryServer;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.TimeZone;
+import java.util.function.Supplier;
 
 
 
@@ -29,6 +49,7 @@ import java.util.concurrent.Executors;
  *  - humidity - задание поддерживаемой влажности в комнате
  *  - light - задание поддерживаемого уровня освещенности в комнате
  *  - status - отображение состояния системы
+ *  - history - минимум, среднее, максимум и 90-й процентиль параметров климата за заданное число минут (10 по умолчанию)
  *
  *  Без участия пользователя параметры климата меняются в ту или иную сторону со случайными
  *  отклонениями (примитивная модель). Параметры для поддержания по умолчанию:
@@ -38,29 +59,142 @@ import java.util.concurrent.Executors;
  *
  *  Состояние отображается по комманде и каждые 5 секунд. Изменения состояния устройств так же отображаются
  *
+ *  Метрики доступны через JMX (например, jconsole) в домене smarthouse: длительность шагов управления
+ *  и шагов комнаты (процентили), число переключений каждого устройства и отклонения параметров от уставок
+ *
+ *  Аргументы запуска:
+ *  - --events - контроллер реагирует на пересечение порогов параметрами климата вместо опроса раз в секунду
+ *  - --log=файл - сообщения устройств записываются в файл с ротацией (по 10Мб, 5 файлов) вместо консоли
+ *  - --checkpoint=файл - состояние контроллера и комнаты восстанавливается из файла контрольных точек при запуске
+ *    и записывается в него каждые 10 секунд и при выключении
+ *  - --simulate=часы - ускоренное моделирование заданного числа часов на виртуальных часах без участия
+ *    пользователя: каждый смоделированный час выводятся минимум, среднее и максимум параметров климата,
+ *    в конце - скорость моделирования. Результат повторяем
+ *  - --journal=файл - команды пользователя и решения контроллера о включении и выключении устройств
+ *    записываются в журнал (команда выполняется после записи на диск)
+ *  - --replay=файл - повтор сеанса из журнала на виртуальных часах: команды выполняются в записанные моменты
+ *    времени без ожидания, в конце выводится итоговое состояние
+ *  - --filter=kalman|ema|median|none - фильтр показаний измерителей: фильтр Калмана (по умолчанию),
+ *    экспоненциальное среднее, медиана 5 показаний или без фильтрации
+ *  - --pid - параметры климата регулируются ПИД-регуляторами, задающими мощность регулируемых устройств,
+ *    вместо включения и выключения устройств с гистерезисом
+ *  - --budget=Вт - ограничение суммарной мощности устройств влияния: мощность распределяется между
+ *    регулируемыми устройствами по отклонению параметров климата и воздействию устройств на ватт
+ *  - --telemetry=порт - вместо периодического вывода состояния в консоль показания отдаются HTTP-сервером
+ *    на 127.0.0.1:порт: /events - поток Server-Sent Events, /metrics - снимок в формате Prometheus
+ *  - --pipeline - показания измерителей передаются контроллеру через кольцевой буфер {@link ReadingRing}
+ *    и обрабатываются пакетами в потоке чтения контроллера, а не в потоках, изменивших параметры
+ *  - --sensors=порт - прием показаний удаленных измерителей (по одному на параметр климата) на 127.0.0.1:порт
+ *    в двоичном протоколе {@link SensorGateway}; номера измерителей выводятся при запуске
+ *  - --schedule=ЧЧ:ММ=значение,... - суточное расписание температуры {@link SetpointSchedule}, например
+ *    --schedule=07:00=22,22:00=18 (по местному времени, при моделировании - от полуночи первых суток)
+ *
  */
 public class SmartHouse {
 
 	public static Environment room = new Room();
+	public static SimulationEngine simulation = new SimulationEngine();
+	/**
+	 * период записи контрольных точек, мс
+	 */
+	private static final long CHECKPOINT_PERIOD = 10_000;
+	/**
+	 * емкость буфера показаний измерителей
+	 */
+	private static final int PIPELINE_CAPACITY = 1 << 16;
+	private static Supplier<? extends SensorFilter> filter = Controller.DEFAULT_FILTER;
+	private static boolean pid;
+	private static double powerBudget;
+	private static String schedule;
 
-
-	public static void main(String[] args) throws InterruptedException {
-		ExecutorService es = Executors.newFixedThreadPool(2);
-		es.execute(room);
+	public static void main(String[] args) throws InterruptedException, IOException {
+		int simulateHours = 0;
+		String checkpointFile = null;
+		String journalFile = null;
+		String replayFile = null;
+		int telemetryPort = -1;
+		int sensorsPort = -1;
+		for (String arg : args) {
+			if (arg.startsWith("--log=")) {
+				AsyncLog.setDefault(new AsyncLog(new RollingFileSink(Paths.get(arg.substring("--log=".length())),
+						10 * 1024 * 1024, 5)));
+			} else if (arg.startsWith("--simulate=")) {
+				simulateHours = Integer.parseInt(arg.substring("--simulate=".length()));
+			} else if (arg.startsWith("--checkpoint=")) {
+				checkpointFile = arg.substring("--checkpoint=".length());
+			} else if (arg.startsWith("--journal=")) {
+				journalFile = arg.substring("--journal=".length());
+			} else if (arg.startsWith("--replay=")) {
+				replayFile = arg.substring("--replay=".length());
+			} else if (arg.startsWith("--filter=")) {
+				filter = filter(arg.substring("--filter=".length()));
+			} else if (arg.startsWith("--budget=")) {
+				powerBudget = Double.parseDouble(arg.substring("--budget=".length()));
+			} else if (arg.startsWith("--sensors=")) {
+				sensorsPort = Integer.parseInt(arg.substring("--sensors=".length()));
+			} else if (arg.startsWith("--schedule=")) {
+				schedule = arg.substring("--schedule=".length());
+			} else if (arg.startsWith("--telemetry=")) {
+				telemetryPort = Integer.parseInt(arg.substring("--telemetry=".length()));
+			}
+		}
+		boolean eventDriven = Arrays.asList(args).contains("--events");
+		pid = Arrays.asList(args).contains("--pid");
+		if (simulateHours > 0) {
+			simulate(simulateHours, eventDriven);
+			return;
+		}
+		if (replayFile != null) {
+			replay(replayFile, eventDriven);
+			return;
+		}
+		for (EnvCondition condition : EnvCondition.values()) {
+			((Room) room).recordHistory(condition.getName(), false);
+		}
+		simulation.add(room);
+		simulation.registerMBeans("SmartHouse");
+		simulation.start();
 		Controller controller = new Controller("SmartHouseController", 10);
-		es.execute(controller);
+		controller.setEventDriven(eventDriven);
+		controller.setFilter(filter);
+		setControlMode(controller);
+		if (Arrays.asList(args).contains("--pipeline")) controller.setPipeline(new ReadingRing(PIPELINE_CAPACITY));
+		controller.registerMBeans();
+		TelemetryServer telemetry = null;
+		if (telemetryPort >= 0) {
+			telemetry = new TelemetryServer(new InetSocketAddress("127.0.0.1", telemetryPort), TelemetryServer.DEFAULT_PERIOD);
+			telemetry.add("SmartHouse", controller::sample);
+			controller.setStatusPeriod(0);
+			MeasuringDevice.setReporting(false);
+			System.out.printf("telemetry on http://127.0.0.1:%d/events and /metrics%n", telemetry.getPort());
+		}
+		controller.start();
 
-		controller.registerDevice(new Thermometer("ThermoWatch", 5, room));
-		controller.registerDevice(new HumiditySensor("HumidityMonitor", 5, room));
-		controller.registerDevice(new LightSensor("BrightnessControl", 5, room));
-		controller.registerDevice(new Heater("SunHeat", 2000, 3, room));
-		controller.registerDevice(new Conditioner("CoolMaster", 1500, -2, room));
-		controller.registerDevice(new Illumination("MagicBright", 100, 1000, room));
-		controller.registerDevice(new Humidifier("OceanMoisture", 45, 10, room));
+		registerDevices(controller);
+		SensorGateway gateway = null;
+		if (sensorsPort >= 0) gateway = remoteSensors(controller, sensorsPort);
+		setDefaults(controller);
+		if (schedule != null) {
+			controller.setSchedule(EnvCondition.TEMPERATURE,
+					schedule(schedule, TimeZone.getDefault().getOffset(System.currentTimeMillis())));
+		}
 
-		controller.setCondition(EnvCondition.TEMPERATURE, 25);
-		controller.setCondition(EnvCondition.HUMIDITY, 65);
-		controller.setCondition(EnvCondition.ILLUMINANCE, 550);
+		Journal journal = null;
+		if (journalFile != null) {
+			journal = new Journal(Paths.get(journalFile));
+			controller.setJournal(journal);
+		}
+
+		Checkpoint checkpoint = null;
+		if (checkpointFile != null) {
+			checkpoint = new Checkpoint(Paths.get(checkpointFile), controller, (Room) room, room.getClock());
+			long started = System.nanoTime();
+			long time = checkpoint.restore();
+			if (time >= 0) {
+				System.out.printf("restored state of %tc in %.2f ms%n", time, (System.nanoTime() - started) / 1e6);
+			}
+			checkpoint.start(CHECKPOINT_PERIOD);
+		}
 
 		Scanner in = new Scanner(System.in);
 		while(in.hasNextLine()) {
@@ -78,34 +212,245 @@ public class SmartHouse {
 					continue;
 				}
 			}
-			switch (command) {
-				case "off":
-					controller.powerOff();
-					Thread.sleep(1500);
-					System.exit(0);
-				case "power":
-					controller.setEcoParam((int) arg);
-					break;
-				case "accuracy":
-					controller.setAccuracy(arg);
-					break;
-				case "status":
-					controller.showStatus();
-					break;
-				case "temp":
-					controller.setPrefference(EnvCondition.TEMPERATURE, arg);
-					break;
-				case "Temp":
-					((Room)room).setOutSideTemp(arg);
-					break;
-				case "humidity":
-					controller.setCondition(EnvCondition.HUMIDITY, arg);
-					break;
-				case "light":
-					controller.setCondition(EnvCondition.ILLUMINANCE, arg);
-					break;
+			if (journal != null) {
+				try {
+					journal.command(room.getClock().millis(), command, arg, validArg);
+				} catch (IllegalArgumentException e) {
+					System.err.printf("invalid command - %s%n", e.getMessage());
+					continue;
+				} catch (IOException e) {
+					// журнал остановлен после ошибки записи - работа продолжается без журнала
+					System.err.printf("journal write failed, journal disabled - %s%n", e);
+					controller.setJournal(null);
+					journal.close();
+					journal = null;
+				}
+			}
+			if (command.equals("off")) {
+				if (checkpoint != null) checkpoint.close();
+				if (telemetry != null) telemetry.close();
+				if (gateway != null) gateway.close();
+				controller.powerOff();
+				if (journal != null) {
+					controller.setJournal(null);
+					journal.close();
+				}
+				Thread.sleep(1500);
+				System.exit(0);
 			}
+			execute(controller, command, arg, validArg);
+		}
+		controller.stop();
+		if (telemetry != null) telemetry.close();
+		if (gateway != null) gateway.close();
+		if (journal != null) {
+			controller.setJournal(null);
+			journal.close();
+		}
+		simulation.shutdown();
+	}
+
+	/**
+	 * Выполнение команды пользователя (кроме выключения)
+	 */
+	private static void execute(Controller controller, String command, float arg, boolean validArg) {
+		switch (command) {
+			case "power":
+				controller.setEcoParam((int) arg);
+				break;
+			case "accuracy":
+				controller.setAccuracy(arg);
+				break;
+			case "status":
+				controller.showStatus();
+				break;
+			case "history":
+				showHistory(validArg ? arg : 10);
+				break;
+			case "temp":
+				controller.setPrefference(EnvCondition.TEMPERATURE, arg);
+				break;
+			case "Temp":
+				((Room)room).setOutSideTemp(arg);
+				break;
+			case "humidity":
+				controller.setCondition(EnvCondition.HUMIDITY, arg);
+				break;
+			case "light":
+				controller.setCondition(EnvCondition.ILLUMINANCE, arg);
+				break;
+		}
+	}
+
+	private static void setDefaults(Controller controller) {
+		controller.setCondition(EnvCondition.TEMPERATURE, 25);
+		controller.setCondition(EnvCondition.HUMIDITY, 65);
+		controller.setCondition(EnvCondition.ILLUMINANCE, 550);
+	}
+
+	private static void registerDevices(Controller controller) {
+		controller.registerDevice(new Thermometer("ThermoWatch", 5, room));
+		controller.registerDevice(new HumiditySensor("HumidityMonitor", 5, room));
+		controller.registerDevice(new LightSensor("BrightnessControl", 5, room));
+		controller.registerDevice(new Heater("SunHeat", 2000, 3, room));
+		controller.registerDevice(new Conditioner("CoolMaster", 1500, -2, room));
+		controller.registerDevice(new Illumination("MagicBright", 100, 1000, room));
+		controller.registerDevice(new Humidifier("OceanMoisture", 45, 10, room));
+	}
+
+	/**
+	 * Удаленные измерители по одному на параметр климата (начальное значение - текущее значение комнаты)
+	 * и шлюз приема их показаний
+	 */
+	private static SensorGateway remoteSensors(Controller controller, int port) throws IOException {
+		SensorGateway gateway = new SensorGateway(new InetSocketAddress("127.0.0.1", port));
+		for (EnvCondition condition : EnvCondition.values()) {
+			RemoteSensor sensor = new RemoteSensor("Remote " + condition.getName(), 1, condition,
+					room.getCondition(condition.getName()).getValue());
+			controller.registerDevice(sensor);
+			System.out.printf("sensor %d - %s%n", gateway.register(sensor), sensor);
+		}
+		System.out.printf("sensor readings on 127.0.0.1:%d%n", gateway.getPort());
+		return gateway;
+	}
+
+	/**
+	 * Ускоренное моделирование: комната, устройства и контроллер работают по виртуальным часам в текущем потоке
+	 */
+	private static void simulate(int hours, boolean eventDriven) {
+		VirtualClock clock = new VirtualClock(0);
+		Controller controller = virtualHouse(clock, eventDriven);
+		controller.setPrefference(EnvCondition.TEMPERATURE, 25);
+		controller.setPrefference(EnvCondition.HUMIDITY, 65);
+		controller.setPrefference(EnvCondition.ILLUMINANCE, 550);
+		if (schedule != null) controller.setSchedule(EnvCondition.TEMPERATURE, schedule(schedule, 0));
+
+		for (int hour = 1; hour <= hours; hour++) {
+			clock.advance(ConditionHistory.HOUR);
+			System.out.printf("hour %d:%n", hour);
+			showHistory(60);
+		}
+		System.out.printf("simulated %d h, %d room ticks, %.0f simulated seconds per second%n",
+				hours, simulation.getTicks(), clock.getSpeedup());
+		controller.stop();
+		simulation.shutdown();
+	}
+
+	/**
+	 * Режим управления по параметрам командной строки: ПИД-регулирование и ограничение мощности
+	 */
+	private static void setControlMode(Controller controller) {
+		controller.setPowerBudget(powerBudget);
+		if (!pid) return;
+		for (EnvCondition condition : EnvCondition.values()) {
+			controller.setPid(condition, PidController.forCondition(condition));
+		}
+	}
+
+	/**
+	 * Расписание уставки из строки вида ЧЧ:ММ=значение,ЧЧ:ММ=значение
+	 */
+	private static SetpointSchedule schedule(String transitions, long zoneOffset) {
+		SetpointSchedule result = new SetpointSchedule(zoneOffset);
+		for (String transition : transitions.split(",")) {
+			String[] timeAndValue = transition.split("=");
+			String[] time = timeAndValue[0].split(":");
+			result.at(Integer.parseInt(time[0].trim()), Integer.parseInt(time[1].trim()),
+					Double.parseDouble(timeAndValue[1].trim()));
+		}
+		return result;
+	}
+
+	private static Supplier<? extends SensorFilter> filter(String name) {
+		switch (name) {
+			case "none":
+				return () -> new ExponentialFilter(1);
+			case "ema":
+				return () -> new ExponentialFilter(0.1);
+			case "median":
+				return () -> new MedianFilter(5);
+			case "kalman":
+				return Controller.DEFAULT_FILTER;
+			default:
+				throw new IllegalArgumentException("unknown filter - " + name);
+		}
+	}
+
+	/**
+	 * Дом на виртуальных часах: комната с постоянным начальным значением генератора, устройства и контроллер
+	 */
+	private static Controller virtualHouse(VirtualClock clock, boolean eventDriven) {
+		room = new Room(clock, 42);
+		simulation = new SimulationEngine(clock, 1);
+		for (EnvCondition condition : EnvCondition.values()) {
+			((Room) room).recordHistory(condition.getName(), false);
+		}
+		simulation.add(room);
+		simulation.start();
+		Controller controller = new Controller("SmartHouseController", 10, new DeviceRuntime(clock));
+		controller.setEventDriven(eventDriven);
+		controller.setFilter(filter);
+		setControlMode(controller);
+		controller.setStatusPeriod(ConditionHistory.HOUR);
+		controller.start();
+		registerDevices(controller);
+		return controller;
+	}
+
+	/**
+	 * Повтор сеанса из журнала: команды выполняются на виртуальных часах в записанные моменты времени
+	 */
+	private static void replay(String file, boolean eventDriven) throws IOException {
+		List<Journal.Entry> commands = new ArrayList<>();
+		long[] decisions = new long[1];
+		Journal.read(Paths.get(file), entry -> {
+			if (entry.kind == Journal.DECISION) {
+				decisions[0]++;
+				return;
+			}
+			Journal.Entry command = new Journal.Entry();
+			command.time = entry.time;
+			command.name = entry.name;
+			command.arg = entry.arg;
+			command.hasArg = entry.hasArg;
+			commands.add(command);
+		});
+		if (commands.isEmpty()) {
+			System.out.println("no commands to replay");
+			return;
+		}
+		long started = System.nanoTime();
+		VirtualClock clock = new VirtualClock(commands.get(0).time);
+		Controller controller = virtualHouse(clock, eventDriven);
+		setDefaults(controller);
+		int replayed = 0;
+		for (Journal.Entry command : commands) {
+			clock.advance(Math.max(0, command.time - clock.millis()));
+			if (command.name.equals("off")) break;
+			execute(controller, command.name, command.arg, command.hasArg);
+			replayed++;
+		}
+		long session = clock.millis() - commands.get(0).time;
+		System.out.printf("replayed %d commands (%d controller decisions recorded) of %.1f s session in %.1f ms%n",
+				replayed, decisions[0], session / 1000.0, (System.nanoTime() - started) / 1e6);
+		System.out.printf("accuracy %.2f", controller.getAccuracy());
+		for (EnvCondition condition : EnvCondition.values()) {
+			Double preference = controller.getPrefference(condition);
+			if (preference != null) System.out.printf(", %s %.2f %s", condition.getName(), preference, condition.getUnit());
+		}
+		System.out.println();
+		controller.stop();
+		simulation.shutdown();
+	}
+
+	private static void showHistory(float minutes) {
+		long now = room.getClock().millis();
+		long from = now - (long) (minutes * ConditionHistory.MINUTE);
+		for (EnvCondition condition : EnvCondition.values()) {
+			ConditionHistory history = ((Room) room).getHistory(condition.getName());
+			System.out.printf("%s for %.0f min: min %5.2f avg %5.2f max %5.2f p90 %5.2f %s%n", condition.getName(), minutes,
+					history.min(from, now), history.avg(from, now), history.max(from, now),
+					history.percentile(from, now, 0.9), condition.getUnit());
 		}
-		es.shutdownNow();
 	}
 }
@@ -0,0 +1,60 @@
+package device;
+
+import env.EnvCondition;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Решения о воздействии на параметры климата, собранные для выполнения за один проход по реестру устройств
+ * {@link DeviceRegistry#actuate}. Решения относятся к группам устройств влияния - параметр климата и знак
+ * воздействия; для группы запоминается последнее решение о включении или выключении и последняя мощность.
+ * Выполняются сначала все выключения, затем задание мощности, затем включения - противоположные
+ * устройства не работают одновременно, а потребление не превышает итогового и в процессе переключения
+ */
+class ActuationPlan implements Actuator {
+	static final byte KEEP = 0;
+	static final byte ON = 1;
+	static final byte OFF = 2;
+	static final int NO_FACTOR = -1;
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+
+	final byte[] actions = new byte[CONDITIONS.length * 2];
+	final int[] factors = new int[actions.length];
+	/**
+	 * число переключенных устройств каждой группы после выполнения
+	 */
+	final int[] switched = new int[actions.length];
+
+	ActuationPlan() {
+		Arrays.fill(factors, NO_FACTOR);
+	}
+
+	static int index(EnvCondition condition, int influenceSign) {
+		return condition.ordinal() * 2 + (influenceSign > 0 ? 1 : 0);
+	}
+
+	static EnvCondition condition(int index) {
+		return CONDITIONS[index / 2];
+	}
+
+	static int influenceSign(int index) {
+		return index % 2 == 1 ? Influencer.POSITIVE_INFLUENCE : Influencer.NEGATIVE_INFLUENCE;
+	}
+
+	@Override
+	public void switchOn(EnvCondition condition, int influenceSign) {
+		if (influenceSign != Influencer.NO_INFLUENCE) actions[index(condition, influenceSign)] = ON;
+	}
+
+	@Override
+	public void switchOff(EnvCondition condition, int influenceSign) {
+		if (influenceSign != Influencer.NO_INFLUENCE) actions[index(condition, influenceSign)] = OFF;
+	}
+
+	@Override
+	public void setPowerFactor(EnvCondition condition, int influenceSign, int factorPercent) {
+		if (influenceSign != Influencer.NO_INFLUENCE) factors[index(condition, influenceSign)] = factorPercent;
+	}
+}
@@ -0,0 +1,17 @@
+package device;
+
+import env.EnvCondition;
+
+
+
+/**
+ * Воздействие на группу устройств влияния - параметр климата и знак воздействия. Контроллер принимает решения
+ * через этот интерфейс, поэтому одни и те же решения выполняются сразу или собираются в {@link ActuationPlan}
+ */
+interface Actuator {
+	void switchOn(EnvCondition condition, int influenceSign);
+
+	void switchOff(EnvCondition condition, int influenceSign);
+
+	void setPowerFactor(EnvCondition condition, int influenceSign, int factorPercent);
+}
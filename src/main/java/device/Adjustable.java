@@ -3,4 +3,9 @@ package device;
 
 public interface Adjustable extends Switchable {
 	void setPowerFactor(int factorPercent);
+
+	/**
+	 * заданная мощность, % - применяется при включении, если устройство выключено
+	 */
+	int getPowerFactor();
 }
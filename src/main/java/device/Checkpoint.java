@@ -0,0 +1,231 @@
+package device;
+
+import env.Clock;
+import env.Condition;
+import env.EnvCondition;
+import env.Measurable;
+import env.Room;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+
+
+/**
+ * Контрольные точки состояния контроллера и комнаты в отображаемом в память файле - для быстрого
+ * восстановления после перезапуска: уставки, точность, режим работы, состояние и мощность устройств,
+ * значения параметров климата и внешняя температура.
+ *
+ * Файл содержит заголовок и две области. Запись выполняется в область, не содержащую последнюю контрольную
+ * точку, после чего в заголовке обновляются контрольная сумма и номер точки, поэтому сбой во время записи
+ * не портит предыдущую точку. Запись выполняется задачей часов и не останавливает управление - состояние
+ * читается теми же методами, что используются при управлении. Восстановление - один проход по отображенному
+ * файлу без разбора текста, поэтому занимает миллисекунды и для десятков тысяч устройств.
+ *
+ * Формат области: время, точность, режим, уставки по параметрам (NaN - не задана), значения параметров
+ * климата и внешняя температура, число устройств и по каждому устройству - хэш описания, признак включения
+ * и мощность (-1 - нерегулируемое).
+ */
+public class Checkpoint implements AutoCloseable {
+	private static final int MAGIC = 0x53484350;
+	private static final int FORMAT = 1;
+	/**
+	 * заголовок: признак, формат, емкость области, и по каждой области - номер точки, длина, контрольная сумма
+	 */
+	private static final int HEADER = 64;
+	private static final int SLOT_HEADER = 16;
+	private static final int DEVICE_RECORD = Integer.BYTES + 1 + Integer.BYTES;
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+
+	private final Path file;
+	private final Controller controller;
+	private final Room room;
+	private final Clock clock;
+	private final CRC32 crc = new CRC32();
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int slotCapacity;
+	private long sequence;
+	private Clock.Task task;
+
+	public Checkpoint(Path file, Controller controller, Room room, Clock clock) {
+		this.file = file;
+		this.controller = controller;
+		this.room = room;
+		this.clock = clock;
+	}
+
+	/**
+	 * Периодическая запись контрольных точек
+	 * @param period - период, мс
+	 */
+	public synchronized void start(long period) {
+		if (task != null) return;
+		task = clock.scheduleAtFixedRate(() -> {
+			try {
+				save();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}, period, period);
+	}
+
+	public synchronized void stop() {
+		if (task == null) return;
+		task.cancel();
+		task = null;
+	}
+
+	/**
+	 * Запись контрольной точки
+	 */
+	public synchronized void save() throws IOException {
+		List<Switchable> devices = controller.getDevices();
+		int length = bodyLength(devices.size());
+		open(length);
+		int slot = (int) ((sequence + 1) & 1);
+		ByteBuffer body = slot(slot, length);
+		body.putLong(clock.millis());
+		body.putDouble(controller.getAccuracy());
+		body.put((byte) (controller.isEventDriven() ? 1 : 0));
+		for (EnvCondition condition : CONDITIONS) {
+			Double preference = controller.getPrefference(condition);
+			body.putDouble(preference == null ? Double.NaN : preference);
+		}
+		for (EnvCondition condition : CONDITIONS) {
+			body.putDouble(room.getCondition(condition.getName()).getValue());
+		}
+		body.putDouble(room.getOutSideTemp());
+		body.putInt(devices.size());
+		for (Switchable device : devices) {
+			body.putInt(identity(device));
+			body.put((byte) (device.isOnline() ? 1 : 0));
+			body.putInt(device instanceof Adjustable ? ((Adjustable) device).getPowerFactor() : -1);
+		}
+		body.flip();
+		crc.reset();
+		crc.update(body);
+		int header = slotHeader(slot);
+		buffer.putInt(header + Long.BYTES, length);
+		buffer.putInt(header + Long.BYTES + Integer.BYTES, (int) crc.getValue());
+		buffer.force();
+		// номер точки записывается последним - область становится действительной только после записи данных
+		buffer.putLong(header, ++sequence);
+		buffer.force();
+	}
+
+	/**
+	 * Восстановление последней действительной контрольной точки. Устройства сопоставляются по порядку
+	 * регистрации и описанию - устройства, не совпадающие с записанными, остаются без изменений
+	 * @return время контрольной точки или -1, если действительной точки нет
+	 */
+	public synchronized long restore() throws IOException {
+		if (!file.toFile().exists() || file.toFile().length() < HEADER) return -1;
+		open(0);
+		int slot = -1;
+		for (int i = 0; i < 2; i++) {
+			long number = buffer.getLong(slotHeader(i));
+			if (number > 0 && (slot < 0 || number > buffer.getLong(slotHeader(slot))) && valid(i)) slot = i;
+		}
+		if (slot < 0) return -1;
+		sequence = buffer.getLong(slotHeader(slot));
+		ByteBuffer body = slot(slot, buffer.getInt(slotHeader(slot) + Long.BYTES));
+		long time = body.getLong();
+		controller.setAccuracy(body.getDouble());
+		boolean eventDriven = body.get() == 1;
+		for (EnvCondition condition : CONDITIONS) {
+			double preference = body.getDouble();
+			if (!Double.isNaN(preference)) controller.setPrefference(condition, preference);
+		}
+		for (EnvCondition condition : CONDITIONS) {
+			double value = body.getDouble();
+			Measurable measurable = room.getCondition(condition.getName());
+			if (measurable instanceof Condition) ((Condition) measurable).setValue(value);
+		}
+		room.setOutSideTemp(body.getDouble());
+		List<Switchable> devices = controller.getDevices();
+		int count = Math.min(body.getInt(), devices.size());
+		for (int i = 0; i < count; i++) {
+			int identity = body.getInt();
+			boolean online = body.get() == 1;
+			int factor = body.getInt();
+			Switchable device = devices.get(i);
+			if (identity == identity(device)) controller.restoreDevice(device, online, factor);
+		}
+		controller.setEventDriven(eventDriven);
+		return time;
+	}
+
+	private boolean valid(int slot) {
+		int header = slotHeader(slot);
+		int length = buffer.getInt(header + Long.BYTES);
+		if (length <= 0 || length > slotCapacity) return false;
+		crc.reset();
+		crc.update(slot(slot, length));
+		return (int) crc.getValue() == buffer.getInt(header + Long.BYTES + Integer.BYTES);
+	}
+
+	/**
+	 * Отображение файла в память. Если область меньше требуемой - файл увеличивается и размечается заново
+	 * (предыдущие точки при этом становятся недействительными)
+	 */
+	private void open(int length) throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			if (channel.size() >= HEADER) {
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+				if (buffer.getInt(0) == MAGIC && buffer.getInt(Integer.BYTES) == FORMAT) {
+					slotCapacity = buffer.getInt(2 * Integer.BYTES);
+					sequence = Math.max(buffer.getLong(slotHeader(0)), buffer.getLong(slotHeader(1)));
+				}
+			}
+		}
+		if (length <= slotCapacity) return;
+		int capacity = Math.max(4096, Integer.highestOneBit(length - 1) << 1);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 2L * capacity);
+		for (int i = 0; i < HEADER; i++) buffer.put(i, (byte) 0);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(Integer.BYTES, FORMAT);
+		buffer.putInt(2 * Integer.BYTES, capacity);
+		slotCapacity = capacity;
+		sequence = 0;
+	}
+
+	private static int slotHeader(int slot) {
+		return 4 * Integer.BYTES + slot * SLOT_HEADER;
+	}
+
+	private ByteBuffer slot(int slot, int length) {
+		ByteBuffer body = buffer.duplicate();
+		int start = HEADER + slot * slotCapacity;
+		body.limit(start + length).position(start);
+		return body.slice();
+	}
+
+	private static int bodyLength(int devices) {
+		return Long.BYTES + Double.BYTES + 1 + 2 * CONDITIONS.length * Double.BYTES + Double.BYTES
+				+ Integer.BYTES + devices * DEVICE_RECORD;
+	}
+
+	private static int identity(Switchable device) {
+		return device.getClass().getName().hashCode() * 31 + device.toString().hashCode();
+	}
+
+	/**
+	 * Остановка периодической записи с записью последней контрольной точки
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		stop();
+		save();
+		if (channel != null) channel.close();
+		channel = null;
+		buffer = null;
+	}
+}
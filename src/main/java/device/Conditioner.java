@@ -14,10 +14,11 @@ public class Conditioner extends ElectronicDevice implements Adjustable, /*Multi
 	final private EnvCondition influenced;
 	final private double efficiency;
 	private final Environment env;
-	protected double currentPower;
+	volatile protected double currentPower;
 	private int suspendFactor = 10;
 	private int workingFactor = 20;
-	protected boolean isOnline;
+	private final PowerRamp ramp;
+	volatile protected boolean isOnline;
 	static int ID = 1;
 
 	public Conditioner(String description, int power, double efficiency, Environment env) {
@@ -26,6 +27,8 @@ public class Conditioner extends ElectronicDevice implements Adjustable, /*Multi
 		influenced = EnvCondition.TEMPERATURE;
 		this.efficiency = efficiency;
 		suspendFactor = workingFactor;
+		currentPower = workingFactor * power / 100;
+		ramp = new PowerRamp(workingFactor, env.getClock(), this::applyFactor);
 	}
 
 	@Override
@@ -36,6 +39,10 @@ public class Conditioner extends ElectronicDevice implements Adjustable, /*Multi
 		env.addInfluencer(this);
 	}
 
+	/**
+	 * Выключение прекращает воздействие сразу, без плавного снижения мощности. Последняя заданная мощность
+	 * запоминается для следующего включения
+	 */
 	@Override
 	public void powerOff() {
 		setPowerFactor(10, true);
@@ -65,30 +72,31 @@ public class Conditioner extends ElectronicDevice implements Adjustable, /*Multi
 	}
 
 	public void setPowerFactor(int factorPercent, boolean save) {
-		int tmpFactor = workingFactor;
-		setPowerFactor(factorPercent);
+		int tmpFactor = ramp.getTarget();
+		ramp.set(factorPercent);
 		if(save) suspendFactor = tmpFactor;
 	}
 
-
+	/**
+	 * Задание мощности. У включенного устройства мощность меняется плавно {@link PowerRamp} - метод
+	 * возвращает управление сразу, не дожидаясь окончания перехода
+	 */
 	@Override
-	synchronized public void setPowerFactor(int factorPercent) {
+	public void setPowerFactor(int factorPercent) {
 		suspendFactor = factorPercent;
-		int sign = -(int) Math.signum(workingFactor - factorPercent);
-		if(isOnline) {
-			while (Math.signum(workingFactor - factorPercent)*sign < 0) {
-				workingFactor += 10*sign;
-				showMsg(String.format("cooling at %d%% power", (int) workingFactor));
-				currentPower += power * workingFactor;
-				try {
-					Thread.sleep(300);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			workingFactor = factorPercent;
-		}
+		if (isOnline) ramp.rampTo(factorPercent);
+	}
+
+	@Override
+	public int getPowerFactor() {
+		return suspendFactor;
+	}
+
+	private void applyFactor(int factorPercent) {
+		workingFactor = factorPercent;
 		currentPower = workingFactor * power / 100;
+		env.influenceChanged(this);
+		if (isOnline) showMsg("cooling at %d%% power", factorPercent);
 	}
 
 	@Override
@@ -103,7 +111,7 @@ public class Conditioner extends ElectronicDevice implements Adjustable, /*Multi
 
 	@Override
 	public void showStatus() {
-		showMsg(" is " + (isOnline ? "on" : "off"));
+		showMsg(isOnline ? " is on" : " is off");
 	}
 
 	@Override
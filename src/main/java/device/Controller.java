@@ -1,14 +1,23 @@
 package device;
 
+import device.filter.FusedCondition;
+import device.filter.KalmanFilter;
+import device.filter.SensorFilter;
+import env.Clock;
 import env.EnvCondition;
+import env.Measurable;
+import env.ThresholdWatch;
+import env.TimingWheel;
+import log.Journal;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import metrics.TelemetryWriter;
 
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 
 
@@ -26,7 +35,14 @@ import java.util.stream.Collectors;
  *
  */
 public class Controller extends ElectronicDevice {
-	volatile private ExecutorService es = Executors.newCachedThreadPool();
+	/**
+	 * Среда исполнения устройств - общий планировщик их периодической работы
+	 */
+	private final DeviceRuntime runtime;
+	/**
+	 * Часы среды исполнения - источник времени и планировщик шагов управления
+	 */
+	private final Clock clock;
 	/**
 	 * Список устройств, доступных контроллеру для управления. Устройство представленно базовым интерфесом
 	 * @Switchable - таким образом, контроллер не зависит от особенностей реализации конкретного устройства конкретным
@@ -36,11 +52,14 @@ public class Controller extends ElectronicDevice {
 	 * - узнать включено ли устройство {@Link isOnline() boolean}
 	 * - запросить детальное состояние устройства {@Link showStatus() void}
 	 *
+	 * Реестр индексирует устройства по назначению, параметру климата и состоянию {@link DeviceRegistry}
 	 */
-	private List<Switchable> devices = new ArrayList<>();
+	private final DeviceRegistry devices = new DeviceRegistry();
 
 	/**
-	 * Список параметров климата, доступные контроллеру через зарегистрированные устройства
+	 * Список параметров климата, доступные контроллеру через зарегистрированные устройства. Монитор списка -
+	 * блокировка шагов управления ({@link #controlStep}, {@link #eventStep}) и {@link #setPrefferences}:
+	 * шаги одного контроллера не выполняются одновременно даже на часах с пулом потоков
 	 */
 	private Map<EnvCondition, Double> preferences = Collections.synchronizedMap(new HashMap<>());
 
@@ -49,9 +68,138 @@ public class Controller extends ElectronicDevice {
 	 */
 	private double ACCURACY = 0.5;
 
+	/**
+	 * период отображения состояния устройств, мс
+	 */
+	private static final long STATUS_PERIOD = 5000;
+	/**
+	 * период шага управления при работе по часам {@link #start()}, мс
+	 */
+	public static final long CONTROL_PERIOD = 1000;
+	private volatile long statusPeriod = STATUS_PERIOD;
+
+	/**
+	 * Режим работы по событиям: вместо опроса параметров климата раз в секунду контроллер ожидает уведомлений
+	 * о пересечении порогов уставка ± ACCURACY (и ± 1.2 ACCURACY) и оценивает только изменившийся параметр
+	 */
+	private volatile boolean eventDriven;
+	private final Map<EnvCondition, ThresholdWatch> watches = new EnumMap<>(EnvCondition.class);
+	/**
+	 * Фильтр показаний измерителей по умолчанию. В установившемся режиме соответствует экспоненциальному
+	 * среднему с весом показания около 0.1, что при моделировании суток сокращает число переключений
+	 * устройств почти вдвое без роста отклонения от уставок
+	 */
+	public static final Supplier<SensorFilter> DEFAULT_FILTER = () -> new KalmanFilter(0.01, 1);
+	/**
+	 * Отфильтрованные значения параметров климата по всем измерителям - контроллер читает готовое значение,
+	 * наблюдатели порогов получают изменения отфильтрованного значения
+	 */
+	private final Map<EnvCondition, FusedCondition> fused = new EnumMap<>(EnvCondition.class);
+	/**
+	 * ПИД-регуляторы параметров климата. Параметры без регулятора управляются включением и выключением
+	 * устройств с гистерезисом
+	 */
+	private final Map<EnvCondition, PidController> pids = Collections.synchronizedMap(new EnumMap<>(EnvCondition.class));
+	/**
+	 * Правила автоматизации пользователя: оцениваются по отфильтрованным значениям параметров и переключениям
+	 * устройств через реестр, действия выполняются в шаге управления
+	 */
+	private final RuleEngine rules = new RuleEngine(this::rulesPending);
+	/**
+	 * Расписания уставок: на каждый параметр с расписанием - таймер ближайшего перехода в колесе таймеров
+	 * среды исполнения
+	 */
+	private final Map<EnvCondition, Transition> schedules = new EnumMap<>(EnvCondition.class);
+	/**
+	 * ограничение мощности дома, Вт (0 - без ограничения)
+	 */
+	private volatile double powerBudget;
+	/**
+	 * буфер показаний измерителей и читатель контроллера (null - контроллер подписан на параметры измерителей)
+	 */
+	private volatile ReadingRing pipeline;
+	private ReadingRing.Reader reader;
+	/**
+	 * параметры, ожидающие оценки (каждый параметр находится в очереди не более одного раза)
+	 */
+	private final BlockingQueue<EnvCondition> pending = new LinkedBlockingQueue<>();
+	private final Set<EnvCondition> queued = Collections.synchronizedSet(EnumSet.noneOf(EnvCondition.class));
+	private long lastStatus;
+	/**
+	 * журнал решений о включении и выключении устройств
+	 */
+	private volatile Journal journal;
+	private long lastSweep;
+	private Clock.Task control;
+	/**
+	 * длительность шагов управления
+	 */
+	private final LatencyHistogram controlLatency = new LatencyHistogram();
+	/**
+	 * немедленное выполнение решений об устройствах
+	 */
+	private final Actuator direct = new Actuator() {
+		@Override
+		public void switchOn(EnvCondition condition, int influenceSign) {
+			Controller.this.switchOn(condition, influenceSign);
+		}
+
+		@Override
+		public void switchOff(EnvCondition condition, int influenceSign) {
+			Controller.this.switchOff(condition, influenceSign);
+		}
+
+		@Override
+		public void setPowerFactor(EnvCondition condition, int influenceSign, int factorPercent) {
+			devices.setPowerFactor(condition, influenceSign, factorPercent);
+		}
+	};
+
+	/**
+	 * Таймер ближайшего перехода расписания уставки: задает уставку и планирует себя на следующий переход
+	 */
+	private final class Transition extends TimingWheel.Timer {
+		final EnvCondition condition;
+		final SetpointSchedule schedule;
+
+		Transition(EnvCondition condition, SetpointSchedule schedule) {
+			this.condition = condition;
+			this.schedule = schedule;
+		}
+
+		@Override
+		protected void expire() {
+			long now = clock.millis();
+			// значение задается под блокировкой расписаний: иначе значение замененного расписания могло бы
+			// быть задано после значения нового
+			synchronized (schedules) {
+				if (schedules.get(condition) != this) return;
+				runtime.getTimers().schedule(this, schedule.nextTransition(now));
+				setPrefference(condition, schedule.valueAt(now));
+			}
+		}
+	}
 
 	public Controller(String description, int power) {
+		this(description, power, new DeviceRuntime());
+	}
+
+	/**
+	 * Контроллер, исполняющий устройства в общей среде (например, несколько домов с одним планировщиком)
+	 */
+	public Controller(String description, int power, DeviceRuntime runtime) {
 		super(description, power, Influencer.NO_INFLUENCE);
+		this.runtime = runtime;
+		clock = runtime.getClock();
+		for (EnvCondition condition : EnvCondition.values()) {
+			ThresholdWatch watch = new ThresholdWatch((changed, measured, zone) -> requestEvaluation(condition));
+			watches.put(condition, watch);
+			fused.put(condition, new FusedCondition(DEFAULT_FILTER, (measured, oldValue, newValue) -> {
+				watch.valueChanged(measured, oldValue, newValue);
+				rules.valueChanged(measured, oldValue, newValue);
+			}));
+		}
+		devices.setListener(rules::deviceChanged);
 	}
 
 	/**
@@ -60,6 +208,93 @@ public class Controller extends ElectronicDevice {
 	 */
 	public void setAccuracy(double ACCURACY) {
 		this.ACCURACY = ACCURACY;
+		preferences.forEach(this::updateWatch);
+	}
+
+	/**
+	 * Запись решений о включении и выключении устройств в журнал. null - не записывать
+	 */
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Фильтр показаний измерителей (например, {@link device.filter.MedianFilter}). Фильтры всех измерителей
+	 * заменяются и начинают с текущих показаний
+	 */
+	public void setFilter(Supplier<? extends SensorFilter> filters) {
+		fused.values().forEach(condition -> condition.setFilters(filters));
+	}
+
+	/**
+	 * Управление параметром климата ПИД-регулятором: мощность регулируемых устройств задается по выходу
+	 * регулятора на каждом шаге управления. null - управление включением и выключением с гистерезисом
+	 */
+	public void setPid(EnvCondition condition, PidController pid) {
+		if (pid == null) pids.remove(condition);
+		else pids.put(condition, pid);
+	}
+
+	public PidController getPid(EnvCondition condition) {
+		return pids.get(condition);
+	}
+
+	/**
+	 * Ограничение суммарной мощности устройств влияния. На каждом шаге управления ограничение распределяется
+	 * между регулируемыми устройствами, которые управление (гистерезис или ПИД-регулятор) запросило включить,
+	 * в первую очередь - устройствам с наибольшим воздействием на ватт по параметрам с наибольшим отклонением.
+	 * Мощность регулируемых устройств при этом задается распределением ({@link #setEcoParam} не действует)
+	 * @param watts - ограничение, Вт; 0 - без ограничения (заданная мощность устройств сохраняется)
+	 */
+	public void setPowerBudget(double watts) {
+		powerBudget = watts;
+	}
+
+	public double getPowerBudget() {
+		return powerBudget;
+	}
+
+	/**
+	 * Получение показаний через кольцевой буфер: измерители публикуют показания в буфер, а контроллер забирает
+	 * их пакетами в собственном потоке чтения (работает между {@link #start()} и {@link #stop()}). Буфер может
+	 * быть общим для нескольких контроллеров - каждый обрабатывает показания своих измерителей.
+	 * Задается до регистрации устройств; измерители, не умеющие публиковать, по-прежнему уведомляют контроллер
+	 */
+	public void setPipeline(ReadingRing ring) {
+		pipeline = ring;
+	}
+
+	/**
+	 * Правила автоматизации контроллера, например:
+	 *   getRules().add(new RuleEngine.Rule().above(HUMIDITY, 70).below(ILLUMINANCE, 100).then(humidifier, 30))
+	 * Действия правил выполняются в шаге управления (при работе по часам - сразу после смены состояния правила)
+	 * и переключают устройства через реестр контроллера
+	 */
+	public RuleEngine getRules() {
+		return rules;
+	}
+
+	public double getAccuracy() {
+		return ACCURACY;
+	}
+
+	/**
+	 * Переключение режима управления: по событиям пересечения порогов или периодическим опросом
+	 */
+	public void setEventDriven(boolean eventDriven) {
+		this.eventDriven = eventDriven;
+		if (eventDriven) preferences.keySet().forEach(this::requestEvaluation);
+	}
+
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+
+	/**
+	 * Период отображения состояния устройств, мс. 0 - состояние отображается только по запросу
+	 */
+	public void setStatusPeriod(long statusPeriod) {
+		this.statusPeriod = statusPeriod;
 	}
 
 	/**
@@ -68,17 +303,33 @@ public class Controller extends ElectronicDevice {
 	 */
 	public void registerDevice(Switchable device) {
 		device.powerOn();
-		showMsg("testing " + device);
-		if (device.isOnline()) {
-			devices.add(device);
-		}
+		showMsg("testing %s", device);
+		boolean tested = device.isOnline();
 		device.powerOff();
-		es.execute((Runnable) device);
-		showMsg(device + " successfully registered");
+		if (tested) {
+			attach(device);
+		}
+		runtime.start(device);
+		showMsg("%s successfully registered", device);
 		if(device instanceof Measurer) device.powerOn();
 
 	}
 
+	/**
+	 * Добавление устройства в список управляемых без тестового включения и запуска его жизненного цикла
+	 * @param device - устройство добавляемое в систему
+	 */
+	void attach(Switchable device) {
+		devices.add(device);
+		if (device instanceof Measurer) {
+			Measurer measurer = (Measurer) device;
+			Measurable measured = measurer.getMeasured();
+			ReadingRing ring = pipeline;
+			boolean published = ring != null && measurer.publishTo(ring);
+			fused.get(measured.getEnvCondition()).add(measured, !published);
+		}
+	}
+
 	public void powerOn() {
 		showMsg("powering on");
 		devices.forEach(Switchable::powerOn);
@@ -103,7 +354,7 @@ public class Controller extends ElectronicDevice {
 	 * (переопределенная в его классе) метода {@Link Switchable::showStatus()}
 	 */
 	public void showStatus() {
-		devices.stream().forEach(Switchable::showStatus);
+		devices.forEach(Switchable::showStatus);
 	}
 
 	/**
@@ -120,72 +371,171 @@ public class Controller extends ElectronicDevice {
 
 	public void setPrefference (EnvCondition condition, double value) {
 		preferences.put(condition, value);
+		updateWatch(condition, value);
 	}
 
 	/**
-	 * Основной метод управления параметрами климата - выбор, и активация устройтва для воздействия на климат
-	 * @param condition - конкретный параметр климата
-	 * @param value - желаемая величина
+	 * Суточное расписание желаемого значения параметра климата: значение, действующее сейчас, задается сразу,
+	 * последующие - в моменты переходов колесом таймеров среды исполнения (отдельный поток или задача часов
+	 * на расписание не нужны). Значение, заданное вручную, действует до следующего перехода
+	 * @param schedule - расписание; null - отмена расписания (текущее значение сохраняется)
 	 */
-	public void setCondition(EnvCondition condition, double value) {
-		double delta = desiredConditionDiff(condition, value);
-//		showErr(String.format("Desired condition [%s %5.2f] (delta is %5.2f)", condition, value, delta));
-		if (Math.abs(delta) < ACCURACY) return;
-		else if (delta > 0) increase(condition); else decrease(condition);
+	public void setSchedule(EnvCondition condition, SetpointSchedule schedule) {
+		if (schedule != null && schedule.size() == 0) throw new IllegalArgumentException("empty schedule");
+		TimingWheel timers = runtime.getTimers();
+		long now = clock.millis();
+		synchronized (schedules) {
+			Transition previous = schedule == null ? schedules.remove(condition)
+					: schedules.put(condition, new Transition(condition, schedule));
+			if (previous != null) timers.cancel(previous);
+			if (schedule == null) return;
+			timers.schedule(schedules.get(condition), schedule.nextTransition(now));
+			setPrefference(condition, schedule.valueAt(now));
+		}
 	}
 
 	/**
-	 * Ряд служебных методов для выбора конкретного типа устройства. Как упоминалось, контроллер не знает конкретного типа
-	 * устройства. Однако он имеет информацию (предположения) о характере устройств по назначению, с которыми он может
-	 * взаимодействовать посредством ряда интерфейсов. Устройства подразделяются на:
-	 * @Switchable - упоминался ранее
-	 * @Adjustable - устройство с возможностью регулирования параметров работы устройства
-	 * @Measurer - устройтсва контроля параметров климата
-	 * @influencer - устройства влияния на параметры климата
-	 *
-	 * @param condition
-	 * @param influenceSign
-	 * @return
+	 * @return расписание параметра климата или null
 	 */
-	private Predicate<Influencer> matchesInfluence(EnvCondition condition, int influenceSign) {
-		return influencer -> influencer.getInfluenced().equals(condition)
-				                     && influenceSign * influencer.getMaxInfluence() > 0;
+	public SetpointSchedule getSchedule(EnvCondition condition) {
+		synchronized (schedules) {
+			Transition transition = schedules.get(condition);
+			return transition == null ? null : transition.schedule;
+		}
 	}
 
-	private Predicate<Influencer> matchesCondition(EnvCondition condition) {
-		return influencer -> influencer.getInfluenced().equals(condition);
+	/**
+	 * Задание нескольких желаемых значений параметров климата за один раз. Значения устанавливаются атомарно
+	 * (шаг управления не видит часть из них), параметры сразу оцениваются, а устройства переключаются
+	 * за одно обращение к реестру устройств - выключения, мощность и включения по всем параметрам
+	 * @param values - желаемые значения; неизмеряемые параметры запоминаются, но не оцениваются
+	 * @return число переключенных устройств
+	 */
+	public int setPrefferences(Map<EnvCondition, Double> values) {
+		ActuationPlan plan = new ActuationPlan();
+		synchronized (preferences) {
+			for (Map.Entry<EnvCondition, Double> entry : values.entrySet()) {
+				EnvCondition condition = entry.getKey();
+				double value = entry.getValue();
+				preferences.put(condition, value);
+				watches.get(condition).setBand(value, ACCURACY, 1.2 * ACCURACY);
+				if (!Double.isNaN(fused.get(condition).getValue())) evaluate(condition, value, plan);
+			}
+			int switched = devices.actuate(plan);
+			for (int i = 0; i < plan.switched.length; i++) {
+				if (plan.switched[i] > 0) record(ActuationPlan.condition(i), ActuationPlan.influenceSign(i),
+						plan.actions[i] == ActuationPlan.ON, plan.switched[i]);
+			}
+			return switched;
+		}
+	}
+
+	/**
+	 * @return заданное значение параметра климата или null, если не задано
+	 */
+	public Double getPrefference(EnvCondition condition) {
+		return preferences.get(condition);
+	}
+
+	/**
+	 * Гистограмма длительности шагов управления (оценки параметров климата и переключения устройств)
+	 */
+	public LatencyHistogram getControlLatency() {
+		return controlLatency;
+	}
+
+	/**
+	 * Регистрация метрик контроллера в JMX: smarthouse:type=Controller (переключения устройств, отклонения
+	 * от уставок) и smarthouse:type=Latency (длительность шагов управления) с именем - описанием контроллера
+	 */
+	public void registerMBeans() {
+		Metrics.register("Controller", description, new ControllerMetrics(this, devices));
+		Metrics.register("Latency", description + " control loop", controlLatency);
+	}
+
+	/**
+	 * Показания для {@link metrics.TelemetryServer}: измеренные значения и уставки параметров климата,
+	 * состояние и мощность устройств
+	 */
+	public void sample(TelemetryWriter writer) {
+		for (EnvCondition condition : EnvCondition.values()) {
+			double value;
+			try {
+				value = getConditionValue(condition);
+			} catch (NoSuchElementException e) {
+				continue;
+			}
+			Double preference = preferences.get(condition);
+			writer.condition(condition.getName(), value, preference == null ? Double.NaN : preference);
+		}
+		devices.forEach(device -> writer.device(device.toString(), device.isOnline(),
+				device instanceof Adjustable ? ((Adjustable) device).getPowerFactor() : -1));
 	}
 
-	private Predicate<Switchable> activeInfluencer() {
-		return device -> device.isOnline() && device instanceof Influencer;
+	/**
+	 * Устройства контроллера в порядке регистрации
+	 */
+	List<Switchable> getDevices() {
+		return devices.list();
 	}
 
-	private Predicate<Switchable> inactiveInfluencer() {
-		return device -> device instanceof Influencer && !device.isOnline();
+	/**
+	 * Восстановление состояния устройства в обход регулирования (например, из контрольной точки {@link Checkpoint})
+	 */
+	void restoreDevice(Switchable device, boolean online, int powerFactor) {
+		devices.apply(device, restored -> {
+			if (restored instanceof Adjustable && powerFactor >= 0) ((Adjustable) restored).setPowerFactor(powerFactor);
+			if (online && !restored.isOnline()) restored.powerOn();
+			else if (!online && restored.isOnline()) restored.powerOff();
+		});
 	}
 
-	private Predicate<Switchable> influencerDevice() {
-		return device -> device instanceof Influencer;
+	private void updateWatch(EnvCondition condition, double value) {
+		watches.get(condition).setBand(value, ACCURACY, 1.2 * ACCURACY);
+		requestEvaluation(condition);
 	}
 
-	private Consumer<Influencer> influencerOff() {
-		return influencer -> ((Switchable) influencer).powerOff();
+	private void rulesPending() {
+		if (isStarted()) clock.schedule(this::eventStep, 0);
 	}
 
-	private Consumer<Influencer> influencerOn() {
-		return influencer -> ((Switchable) influencer).powerOn();
+	/**
+	 * Действие правила: выключение или включение устройства с заданной мощностью
+	 */
+	private void actuate(Switchable device, int factorPercent) {
+		devices.apply(device, target -> {
+			if (factorPercent == RuleEngine.OFF) {
+				if (target.isOnline()) target.powerOff();
+				return;
+			}
+			if (target instanceof Adjustable && ((Adjustable) target).getPowerFactor() != factorPercent) {
+				((Adjustable) target).setPowerFactor(factorPercent);
+			}
+			if (!target.isOnline()) target.powerOn();
+		});
 	}
 
-	private Function<Switchable, Influencer> castToInfluenser() {
-		return device -> (Influencer) device;
+	private void requestEvaluation(EnvCondition condition) {
+		if (eventDriven && queued.add(condition)) {
+			pending.offer(condition);
+			if (isStarted()) clock.schedule(this::eventStep, 0);
+		}
 	}
 
-	private Function<Switchable, Adjustable> castToAdjustable() {
-		return device -> (Adjustable) device;
+	/**
+	 * Основной метод управления параметрами климата - выбор, и активация устройтва для воздействия на климат
+	 * @param condition - конкретный параметр климата
+	 * @param value - желаемая величина
+	 */
+	public void setCondition(EnvCondition condition, double value) {
+		setCondition(condition, value, direct);
 	}
 
-	private Predicate<? super Switchable> adjustableDevice() {
-		return device -> device instanceof Adjustable;
+	private void setCondition(EnvCondition condition, double value, Actuator actuator) {
+		double delta = desiredConditionDiff(condition, value);
+//		showErr(String.format("Desired condition [%s %5.2f] (delta is %5.2f)", condition, value, delta));
+		if (Math.abs(delta) < ACCURACY) return;
+		else if (delta > 0) increase(condition, actuator); else decrease(condition, actuator);
 	}
 
 	/**
@@ -193,47 +543,59 @@ public class Controller extends ElectronicDevice {
 	 * характеристик
 	 * @param condition - конкретный параметр климата
 	 */
-	private void decrease(EnvCondition condition) {
+	void decrease(EnvCondition condition) {
+		decrease(condition, direct);
+	}
+
+	void increase(EnvCondition condition) {
+		increase(condition, direct);
+	}
+
+	private void decrease(EnvCondition condition, Actuator actuator) {
 		//power off heaters
-		devices.stream().filter(activeInfluencer())
-				.map(castToInfluenser())
-				.filter(matchesInfluence(condition, Influencer.POSITIVE_INFLUENCE))
-				.forEach(influencerOff());
-		devices.stream().filter(inactiveInfluencer())
-				.map(castToInfluenser())
-				.filter(matchesInfluence(condition, Influencer.NEGATIVE_INFLUENCE))
-				.forEach(influencerOn());
+		actuator.switchOff(condition, Influencer.POSITIVE_INFLUENCE);
+		actuator.switchOn(condition, Influencer.NEGATIVE_INFLUENCE);
+	}
+
+	private void increase(EnvCondition condition, Actuator actuator) {
+		actuator.switchOff(condition, Influencer.NEGATIVE_INFLUENCE);
+		actuator.switchOn(condition, Influencer.POSITIVE_INFLUENCE);
 	}
 
-	private void increase(EnvCondition condition) {
-		Collection<Influencer> influencers = devices.stream().filter(activeInfluencer())
-				                                     .map(castToInfluenser())
-				                                     .filter(matchesInfluence(condition, Influencer.NEGATIVE_INFLUENCE))
-				                                     .collect(Collectors.toList());
-		influencers.forEach(influencerOff());
-		influencers = devices.stream()
-				              .filter(inactiveInfluencer())
-				              .map(castToInfluenser())
-				              .filter(matchesInfluence(condition, Influencer.POSITIVE_INFLUENCE))
-				              .collect(Collectors.toList());
-		influencers.forEach(influencerOn());
+	private void cancelInfluence(EnvCondition condition, int influenceKind, Actuator actuator) {
+		actuator.switchOff(condition, influenceKind);
+	}
+
+	private void switchOn(EnvCondition condition, int influenceSign) {
+		int switched = devices.switchOn(condition, influenceSign);
+		if (switched > 0) record(condition, influenceSign, true, switched);
+	}
 
+	private void switchOff(EnvCondition condition, int influenceSign) {
+		int switched = devices.switchOff(condition, influenceSign);
+		if (switched > 0) record(condition, influenceSign, false, switched);
 	}
 
-	private void cancelInfluence(EnvCondition condition, int influenceKind) {
-		devices.stream().filter(activeInfluencer())
-				.map(castToInfluenser())
-				.filter(matchesInfluence(condition, influenceKind))
-				.forEach(influencerOff());
+	private void record(EnvCondition condition, int influenceSign, boolean on, int switched) {
+		Journal journal = this.journal;
+		if (journal == null) return;
+		try {
+			journal.decision(clock.millis(), condition.ordinal(), influenceSign, on, switched);
+		} catch (IllegalStateException e) {
+			// журнал остановлен (ошибка записи или закрытие) - решения дальше не записываются
+			if (this.journal == journal) this.journal = null;
+			e.printStackTrace();
+		}
 	}
 
-	private double getConditionValue(EnvCondition condition) {
-		return devices.stream()
-				       .filter(switchable -> switchable instanceof Measurer)
-				       .map(switchable -> (Measurer) switchable)
-				       .filter(measurer -> measurer.getMeasured().getEnvCondition().equals(condition))
-				       .mapToDouble(measurer -> measurer.getMeasured().getValue())
-				       .average().getAsDouble();
+	/**
+	 * Отфильтрованное значение параметра климата по всем его измерителям
+	 * @throws NoSuchElementException - если параметр не измеряется ни одним устройством
+	 */
+	double getConditionValue(EnvCondition condition) {
+		double value = fused.get(condition).getValue();
+		if (Double.isNaN(value)) throw new NoSuchElementException("no measurer for " + condition.getName());
+		return value;
 	}
 
 	/**
@@ -242,14 +604,167 @@ public class Controller extends ElectronicDevice {
 	 */
 	public void setEcoParam(int arg) {
 		if (arg > 100) arg = 100;
-		double d = arg;
-		Collection<Adjustable> adj = devices.stream()
-				                             .filter(influencerDevice())
-				                             .filter(adjustableDevice())
-				                             .map(castToAdjustable())
-				                             .collect(Collectors.toList());
 		final int finalArg = arg;
-		adj.forEach(adjustable -> adjustable.setPowerFactor(finalArg));
+		devices.adjustables().forEach(adjustable -> adjustable.setPowerFactor(finalArg));
+	}
+
+	/**
+	 * Оценка отклонения параметра климата от заданного и воздействие на него: в пределах точности воздействие
+	 * прекращается, за пределами 1.2 точности - устройства включаются, между ними - состояние не меняется
+	 */
+	private void evaluate(EnvCondition condition, double value) {
+		evaluate(condition, value, direct);
+	}
+
+	private void evaluate(EnvCondition condition, double value, Actuator actuator) {
+		PidController pid = pids.get(condition);
+		if (pid != null) {
+			regulate(condition, value, pid, actuator);
+			return;
+		}
+		double delta = desiredConditionDiff(condition, value);
+		if (Math.abs(delta) < ACCURACY) cancelInfluence(condition, (int) Math.signum(delta), actuator);
+		else if (Math.abs(delta) > (1.2 * ACCURACY)) setCondition(condition, value, actuator);
+	}
+
+	/**
+	 * Шаг ПИД-регулирования: устройства, воздействующие в сторону выхода регулятора, включаются с мощностью,
+	 * равной выходу (нерегулируемые - на полную мощность), противоположные выключаются. Выход меньше
+	 * {@link PidController#RESOLUTION} выключает все устройства влияния на параметр
+	 */
+	private void regulate(EnvCondition condition, double value, PidController pid, Actuator actuator) {
+		double output = pid.update(value, getConditionValue(condition), clock.millis());
+		int factor = (int) Math.round(Math.abs(output) / PidController.RESOLUTION) * PidController.RESOLUTION;
+		if (factor == 0) {
+			actuator.switchOff(condition, Influencer.POSITIVE_INFLUENCE);
+			actuator.switchOff(condition, Influencer.NEGATIVE_INFLUENCE);
+			return;
+		}
+		int sign = output > 0 ? Influencer.POSITIVE_INFLUENCE : Influencer.NEGATIVE_INFLUENCE;
+		actuator.switchOff(condition, -sign);
+		// при ограничении мощности выход регулятора - потребность для распределения мощности
+		if (powerBudget <= 0) actuator.setPowerFactor(condition, sign, factor);
+		actuator.switchOn(condition, sign);
+	}
+
+	/**
+	 * Запуск управления по часам среды исполнения: шаг управления {@link #controlStep()} планируется
+	 * каждые {@link #CONTROL_PERIOD} мс, а при работе по событиям оценка параметров, пересекших пороги,
+	 * планируется сразу по уведомлению. Отдельный поток контроллеру не нужен, а с виртуальными часами
+	 * управление моделируется ускоренно вместе со средой и устройствами
+	 */
+	public synchronized void start() {
+		if (control != null) return;
+		control = clock.scheduleAtFixedRate(this::controlStep, 0, CONTROL_PERIOD);
+		ReadingRing ring = pipeline;
+		if (ring != null) {
+			ReadingRing.Reader reader = this.reader = ring.newReader();
+			Thread consumer = new Thread(() -> reader.run(this::consume, ReadingRing.DEFAULT_BATCH),
+					description + " readings");
+			consumer.setDaemon(true);
+			consumer.start();
+		}
+	}
+
+	public synchronized void stop() {
+		if (control == null) return;
+		control.cancel();
+		control = null;
+		if (reader != null) {
+			reader.halt();
+			reader = null;
+		}
+	}
+
+	/**
+	 * Показание из буфера - объединенному значению параметра (показания чужих измерителей не учитываются)
+	 */
+	private void consume(Measurable source, double value, boolean endOfBatch) {
+		fused.get(source.getEnvCondition()).valueChanged(source, Double.NaN, value);
+	}
+
+	private synchronized boolean isStarted() {
+		return control != null;
+	}
+
+	/**
+	 * Шаг управления: отображение состояния раз в период и оценка параметров климата - всех при опросе,
+	 * при работе по событиям - всех лишь раз в {@link #STATUS_PERIOD} (на случай изменения состояния устройств
+	 * в обход контроллера), регулируемых ПИД-регулятором и ожидающих оценки
+	 */
+	private void controlStep() {
+		long started = System.nanoTime();
+		long now = clock.millis();
+		if (statusPeriod > 0 && now - lastStatus >= statusPeriod) {
+			lastStatus = now;
+			showStatus();
+		}
+		synchronized (preferences) {
+			if (!eventDriven || now - lastSweep >= STATUS_PERIOD) {
+				lastSweep = now;
+				preferences.forEach(this::evaluate);
+			} else {
+				// ПИД-регулирование выполняется на каждом шаге и при работе по событиям
+				pids.forEach((condition, pid) -> {
+					Double value = preferences.get(condition);
+					if (value != null) regulate(condition, value, pid, direct);
+				});
+			}
+			drainPending();
+			if (powerBudget > 0) allocatePower();
+		}
+		controlLatency.recordSince(started);
+	}
+
+	/**
+	 * Распределение ограничения мощности: потребность группы устройств - выход ПИД-регулятора параметра
+	 * в сторону воздействия группы, при управлении с гистерезисом - полная мощность включенных устройств;
+	 * вес - отклонение параметра от уставки в сторону воздействия
+	 */
+	private void allocatePower() {
+		for (EnvCondition condition : EnvCondition.values()) {
+			Double preference = preferences.get(condition);
+			double deviation = 0;
+			if (preference != null) {
+				try {
+					deviation = (preference - getConditionValue(condition)) / ACCURACY;
+				} catch (NoSuchElementException e) {
+					preference = null;
+				}
+			}
+			PidController pid = pids.get(condition);
+			for (int sign = -1; sign <= 1; sign += 2) {
+				double demand = 0;
+				if (preference != null && pid != null) demand = Math.max(0, sign * pid.getOutput()) / PidController.MAX_OUTPUT;
+				else if (preference != null && devices.isOnline(condition, sign)) demand = 1;
+				devices.setDemand(condition, sign, demand, sign * deviation);
+			}
+		}
+		devices.planPower(powerBudget);
+	}
+
+	/**
+	 * Шаг управления по уведомлению - оценка параметров, ожидающих оценки
+	 */
+	private void eventStep() {
+		long started = System.nanoTime();
+		synchronized (preferences) {
+			drainPending();
+		}
+		controlLatency.recordSince(started);
+	}
+
+	/**
+	 * Оценка параметров, ожидающих оценки, и действия правил, сменивших состояние
+	 */
+	private void drainPending() {
+		EnvCondition condition;
+		while ((condition = pending.poll()) != null) {
+			queued.remove(condition);
+			Double value = preferences.get(condition);
+			if (value != null) evaluate(condition, value);
+		}
+		rules.drain(this::actuate);
 	}
 
 	/**
@@ -260,18 +775,51 @@ public class Controller extends ElectronicDevice {
 	public void run() {
 		long statusRate = 0;
 		while(true) {
+			if (eventDriven) {
+				if (!awaitEvents()) return;
+				continue;
+			}
 			if(statusRate++ % 5 == 0) showStatus();
-			preferences.forEach((condition, value) -> {
-				double delta = desiredConditionDiff(condition, value);
-				if (Math.abs(delta) < ACCURACY) cancelInfluence(condition, (int) Math.signum(delta));
-				else if (Math.abs(delta) > (1.2 * ACCURACY)) setCondition(condition, value);
-			});
+			long started = System.nanoTime();
+			preferences.forEach(this::evaluate);
+			rules.drain(this::actuate);
+			if (powerBudget > 0) allocatePower();
+			controlLatency.recordSince(started);
 			try {
 				Thread.sleep(1000);
 			} catch (InterruptedException e) {
-				es.shutdownNow();
+				runtime.shutdown();
 			}
 		}
 	}
 
+	/**
+	 * Шаг работы по событиям - ожидание и оценка параметров, пересекших пороги. Раз в {@link #STATUS_PERIOD}
+	 * отображается состояние и оцениваются все параметры (на случай изменения состояния устройств в обход контроллера)
+	 * @return false - если поток прерван
+	 */
+	private boolean awaitEvents() {
+		long now = clock.millis();
+		if (now - lastStatus >= STATUS_PERIOD) {
+			lastStatus = now;
+			showStatus();
+			preferences.forEach(this::evaluate);
+		}
+		EnvCondition condition;
+		try {
+			condition = pending.poll(STATUS_PERIOD - (now - lastStatus), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			runtime.shutdown();
+			return false;
+		}
+		rules.drain(this::actuate);
+		if (condition == null) return true;
+		long started = System.nanoTime();
+		queued.remove(condition);
+		Double value = preferences.get(condition);
+		if (value != null) evaluate(condition, value);
+		controlLatency.recordSince(started);
+		return true;
+	}
+
 }
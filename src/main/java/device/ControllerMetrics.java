@@ -0,0 +1,62 @@
+package device;
+
+import env.EnvCondition;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+
+
+/**
+ * Метрики контроллера для JMX. Значения вычисляются при чтении атрибута, поэтому управление не несет
+ * затрат на их поддержание (кроме счетчиков переключений в реестре устройств)
+ */
+class ControllerMetrics implements ControllerMetricsMXBean {
+	private final Controller controller;
+	private final DeviceRegistry devices;
+
+	ControllerMetrics(Controller controller, DeviceRegistry devices) {
+		this.controller = controller;
+		this.devices = devices;
+	}
+
+	@Override
+	public Map<String, Long> getActuations() {
+		return devices.actuations();
+	}
+
+	@Override
+	public long getTotalActuations() {
+		long total = 0;
+		for (long count : devices.actuations().values()) {
+			total += count;
+		}
+		return total;
+	}
+
+	@Override
+	public Map<String, Double> getDeviations() {
+		Map<String, Double> result = new LinkedHashMap<>();
+		for (EnvCondition condition : EnvCondition.values()) {
+			Double preference = controller.getPrefference(condition);
+			if (preference == null) continue;
+			try {
+				result.put(condition.getName(), preference - controller.getConditionValue(condition));
+			} catch (NoSuchElementException e) {
+				// параметр не измеряется - отклонение неизвестно
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public int getDeviceCount() {
+		return devices.size();
+	}
+
+	@Override
+	public boolean isEventDriven() {
+		return controller.isEventDriven();
+	}
+}
@@ -0,0 +1,26 @@
+package device;
+
+import java.util.Map;
+
+
+
+/**
+ * Метрики контроллера, доступные через JMX: переключения устройств и отклонения параметров климата от уставок
+ */
+public interface ControllerMetricsMXBean {
+	/**
+	 * число переключений по устройствам влияния
+	 */
+	Map<String, Long> getActuations();
+
+	long getTotalActuations();
+
+	/**
+	 * отклонение по параметрам климата с заданной уставкой: уставка минус отфильтрованное значение по всем измерителям
+	 */
+	Map<String, Double> getDeviations();
+
+	int getDeviceCount();
+
+	boolean isEventDriven();
+}
@@ -0,0 +1,275 @@
+package device;
+
+import env.EnvCondition;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+
+
+/**
+ * Реестр устройств контроллера с индексами для выбора конкретного типа устройства. Как упоминалось, контроллер
+ * не знает конкретного типа устройства. Однако он имеет информацию (предположения) о характере устройств по
+ * назначению, с которыми он может взаимодействовать посредством ряда интерфейсов. Устройства подразделяются на:
+ * @Switchable - любое устройство
+ * @Adjustable - устройство с возможностью регулирования параметров работы устройства
+ * @Measurer - устройтсва контроля параметров климата
+ * @Influencer - устройства влияния на параметры климата
+ *
+ * Устройства влияния индексируются по параметру климата, знаку воздействия и состоянию (включено/выключено),
+ * поэтому выбор устройств для воздействия не требует просмотра всего списка устройств. Индекс состояния
+ * обновляется при каждом включении/выключении устройства через реестр.
+ */
+class DeviceRegistry {
+	private final List<Switchable> devices = new ArrayList<>();
+	private final Map<EnvCondition, InfluenceGroup> influencers = new EnumMap<>(EnvCondition.class);
+	private final List<Adjustable> adjustables = new ArrayList<>();
+	/**
+	 * буфер устройств, переключаемых за один вызов (устройства переходят из одного индекса в другой)
+	 */
+	private final List<Switchable> batch = new ArrayList<>();
+	/**
+	 * число переключений устройств влияния (массив из одного элемента - счетчик без упаковки)
+	 */
+	private final Map<Switchable, long[]> actuations = new IdentityHashMap<>();
+	/**
+	 * распределение ограничения мощности между регулируемыми устройствами влияния
+	 */
+	private final PowerBudget budget = new PowerBudget();
+	/**
+	 * мощность включенных нерегулируемых устройств влияния, Вт
+	 */
+	private double fixedLoad;
+	/**
+	 * получатель уведомлений о переключении устройств через реестр (например, правила автоматизации)
+	 */
+	private Consumer<Switchable> listener;
+
+	/**
+	 * Устройства влияния на один параметр климата, разделенные по знаку воздействия и состоянию
+	 */
+	private static class InfluenceGroup {
+		final Set<Switchable> positiveOnline = new LinkedHashSet<>();
+		final Set<Switchable> positiveOffline = new LinkedHashSet<>();
+		final Set<Switchable> negativeOnline = new LinkedHashSet<>();
+		final Set<Switchable> negativeOffline = new LinkedHashSet<>();
+
+		Set<Switchable> get(int influenceSign, boolean online) {
+			if (influenceSign > 0) return online ? positiveOnline : positiveOffline;
+			return online ? negativeOnline : negativeOffline;
+		}
+	}
+
+	DeviceRegistry() {
+		for (EnvCondition condition : EnvCondition.values()) {
+			influencers.put(condition, new InfluenceGroup());
+		}
+	}
+
+	synchronized void add(Switchable device) {
+		devices.add(device);
+		if (device instanceof Influencer) {
+			if (device instanceof Adjustable) adjustables.add((Adjustable) device);
+			int sign = influenceSign((Influencer) device);
+			if (sign != Influencer.NO_INFLUENCE) {
+				Influencer influencer = (Influencer) device;
+				influencers.get(influencer.getInfluenced()).get(sign, device.isOnline()).add(device);
+				actuations.put(device, new long[1]);
+				if (device instanceof Adjustable) {
+					budget.add((Adjustable) device, influencer.getInfluenced(), sign, influencer.getMaxInfluence(), watts(device));
+				} else if (device.isOnline()) {
+					fixedLoad += watts(device);
+				}
+			}
+		}
+	}
+
+	synchronized void setListener(Consumer<Switchable> listener) {
+		this.listener = listener;
+	}
+
+	synchronized int size() {
+		return devices.size();
+	}
+
+	/**
+	 * Выполнение действия над всеми устройствами с последующим обновлением индекса состояния
+	 */
+	synchronized void forEach(Consumer<Switchable> action) {
+		for (Switchable device : devices) {
+			action.accept(device);
+			sync(device);
+		}
+	}
+
+	/**
+	 * Выполнение действия над устройством с последующим обновлением индекса состояния
+	 */
+	synchronized void apply(Switchable device, Consumer<Switchable> action) {
+		action.accept(device);
+		sync(device);
+	}
+
+	/**
+	 * Устройства в порядке регистрации (копия)
+	 */
+	synchronized List<Switchable> list() {
+		return new ArrayList<>(devices);
+	}
+
+	/**
+	 * Включение выключенных устройств, воздействующих на параметр климата в заданную сторону
+	 * @return число переключенных устройств
+	 */
+	synchronized int switchOn(EnvCondition condition, int influenceSign) {
+		if (influenceSign == Influencer.NO_INFLUENCE) return 0;
+		return switchAll(influencers.get(condition).get(influenceSign, false), Switchable::powerOn);
+	}
+
+	/**
+	 * Выключение включенных устройств, воздействующих на параметр климата в заданную сторону
+	 * @return число переключенных устройств
+	 */
+	synchronized int switchOff(EnvCondition condition, int influenceSign) {
+		if (influenceSign == Influencer.NO_INFLUENCE) return 0;
+		return switchAll(influencers.get(condition).get(influenceSign, true), Switchable::powerOff);
+	}
+
+	/**
+	 * Задание мощности регулируемым устройствам (включенным и выключенным), воздействующим на параметр климата
+	 * в заданную сторону. Мощность устройств, у которых она уже задана, не меняется
+	 * @return число устройств, мощность которых изменена
+	 */
+	synchronized int setPowerFactor(EnvCondition condition, int influenceSign, int factorPercent) {
+		if (influenceSign == Influencer.NO_INFLUENCE) return 0;
+		InfluenceGroup group = influencers.get(condition);
+		return setPowerFactor(group.get(influenceSign, true), factorPercent)
+				+ setPowerFactor(group.get(influenceSign, false), factorPercent);
+	}
+
+	private static int setPowerFactor(Set<Switchable> candidates, int factorPercent) {
+		int changed = 0;
+		for (Switchable device : candidates) {
+			if (!(device instanceof Adjustable)) continue;
+			Adjustable adjustable = (Adjustable) device;
+			if (adjustable.getPowerFactor() == factorPercent) continue;
+			adjustable.setPowerFactor(factorPercent);
+			changed++;
+		}
+		return changed;
+	}
+
+	/**
+	 * Выполнение решений плана за одно обращение к реестру: выключения, мощность, включения
+	 * @return число переключенных устройств (по группам - в {@link ActuationPlan#switched})
+	 */
+	synchronized int actuate(ActuationPlan plan) {
+		int total = 0;
+		for (int i = 0; i < plan.actions.length; i++) {
+			if (plan.actions[i] != ActuationPlan.OFF) continue;
+			plan.switched[i] = switchOff(ActuationPlan.condition(i), ActuationPlan.influenceSign(i));
+			total += plan.switched[i];
+		}
+		for (int i = 0; i < plan.factors.length; i++) {
+			if (plan.factors[i] == ActuationPlan.NO_FACTOR) continue;
+			setPowerFactor(ActuationPlan.condition(i), ActuationPlan.influenceSign(i), plan.factors[i]);
+		}
+		for (int i = 0; i < plan.actions.length; i++) {
+			if (plan.actions[i] != ActuationPlan.ON) continue;
+			plan.switched[i] = switchOn(ActuationPlan.condition(i), ActuationPlan.influenceSign(i));
+			total += plan.switched[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Включены ли устройства, воздействующие на параметр климата в заданную сторону
+	 */
+	synchronized boolean isOnline(EnvCondition condition, int influenceSign) {
+		if (influenceSign == Influencer.NO_INFLUENCE) return false;
+		return !influencers.get(condition).get(influenceSign, true).isEmpty();
+	}
+
+	/**
+	 * Потребность в мощности регулируемых устройств, воздействующих на параметр климата в заданную сторону
+	 * @param fraction - доля суммарной мощности включенных из них
+	 * @param weight - отклонение параметра в сторону воздействия, в единицах точности
+	 */
+	synchronized void setDemand(EnvCondition condition, int influenceSign, double fraction, double weight) {
+		budget.setDemand(condition, influenceSign, fraction * budget.capacity(condition, influenceSign), weight);
+	}
+
+	/**
+	 * Распределение ограничения мощности дома (за вычетом включенных нерегулируемых устройств) между
+	 * регулируемыми устройствами влияния по заданным потребностям {@link PowerBudget}
+	 * @return число устройств, мощность которых изменена
+	 */
+	synchronized int planPower(double cap) {
+		return budget.plan(cap - fixedLoad);
+	}
+
+	private int switchAll(Set<Switchable> candidates, Consumer<Switchable> action) {
+		if (candidates.isEmpty()) return 0;
+		for (Switchable device : candidates) {
+			batch.add(device);
+		}
+		try {
+			for (Switchable device : batch) {
+				action.accept(device);
+				sync(device);
+			}
+			return batch.size();
+		} finally {
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Число переключений каждого устройства влияния в порядке регистрации (копия)
+	 */
+	synchronized Map<String, Long> actuations() {
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (Switchable device : devices) {
+			long[] count = actuations.get(device);
+			if (count != null) result.merge(device.toString(), count[0], Long::sum);
+		}
+		return result;
+	}
+
+	/**
+	 * Регулируемые устройства влияния (копия - регулировка может быть продолжительной)
+	 */
+	synchronized List<Adjustable> adjustables() {
+		return new ArrayList<>(adjustables);
+	}
+
+	/**
+	 * Перенос устройства в индекс, соответствующий его фактическому состоянию. Перенос учитывается
+	 * как переключение устройства. Получатель уведомляется о каждом устройстве, в том числе не перенесенном
+	 */
+	private void sync(Switchable device) {
+		if (listener != null) listener.accept(device);
+		if (!(device instanceof Influencer)) return;
+		int sign = influenceSign((Influencer) device);
+		if (sign == Influencer.NO_INFLUENCE) return;
+		InfluenceGroup group = influencers.get(((Influencer) device).getInfluenced());
+		boolean online = device.isOnline();
+		if (group.get(sign, !online).remove(device)) {
+			group.get(sign, online).add(device);
+			actuations.get(device)[0]++;
+			if (device instanceof Adjustable) budget.setOnline((Adjustable) device, online);
+			else fixedLoad += online ? watts(device) : -watts(device);
+		}
+	}
+
+	/**
+	 * номинальная мощность устройства, Вт (0 - неизвестна)
+	 */
+	private static double watts(Switchable device) {
+		return device instanceof ElectronicDevice ? ((ElectronicDevice) device).power : 0;
+	}
+
+	private static int influenceSign(Influencer influencer) {
+		return (int) Math.signum(influencer.getMaxInfluence());
+	}
+}
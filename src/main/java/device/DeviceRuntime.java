@@ -0,0 +1,138 @@
+package device;
+
+import env.Clock;
+import env.SystemClock;
+import env.TimingWheel;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+
+
+/**
+ * Среда исполнения устройств. Периодическая работа устройств {@link Periodic} планируется часами {@link Clock}
+ * (в реальном времени - общим пулом потоков по числу ядер), поэтому один контроллер может обслуживать сотни
+ * тысяч устройств без отдельного потока на каждое, а с виртуальными часами - моделировать их работу ускоренно.
+ * Устройства, не реализующие {@link Periodic}, но являющиеся {@link Runnable}, исполняются как прежде -
+ * в отдельном пуле потоков, поскольку их метод run() может содержать бесконечный цикл.
+ *
+ * Отложенные события с большим числом экземпляров (переходы расписаний уставок контроллеров) планируются
+ * общим колесом таймеров {@link #getTimers()}, продвигаемым одной задачей часов.
+ */
+public class DeviceRuntime {
+	/**
+	 * такт колеса таймеров, мс
+	 */
+	public static final long TIMER_TICK = 1000;
+	private final Clock clock;
+	/**
+	 * собственные часы среды (создаются конструктором с числом потоков и останавливаются вместе со средой)
+	 */
+	private final SystemClock ownClock;
+	private final ExecutorService legacy = Executors.newCachedThreadPool(daemon("device"));
+	private final Map<Object, Clock.Task> scheduled = new ConcurrentHashMap<>();
+	private TimingWheel timers;
+
+	public DeviceRuntime() {
+		this(Clock.system());
+	}
+
+	public DeviceRuntime(int threads) {
+		clock = ownClock = new SystemClock(threads);
+	}
+
+	public DeviceRuntime(Clock clock) {
+		this.clock = clock;
+		ownClock = null;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Запуск жизненного цикла устройства
+	 */
+	public void start(Object device) {
+		if (device instanceof Periodic) {
+			Periodic periodic = (Periodic) device;
+			scheduled.computeIfAbsent(device, key -> clock.scheduleAtFixedRate(() -> tick(periodic),
+					periodic.getPeriod(), periodic.getPeriod()));
+		} else if (device instanceof Runnable) {
+			legacy.execute((Runnable) device);
+		}
+	}
+
+	/**
+	 * Остановка периодической работы устройства
+	 */
+	public void stop(Object device) {
+		Clock.Task task = scheduled.remove(device);
+		if (task != null) task.cancel();
+	}
+
+	/**
+	 * Однократное исполнение задачи планировщиком часов
+	 */
+	public void execute(Runnable task) {
+		clock.schedule(task, 0);
+	}
+
+	/**
+	 * Отложенное исполнение задачи планировщиком часов
+	 */
+	public Clock.Task schedule(Runnable task, long delay) {
+		return clock.schedule(task, delay);
+	}
+
+	/**
+	 * Периодическое исполнение задачи планировщиком часов
+	 */
+	public Clock.Task scheduleAtFixedRate(Runnable task, long delay, long period) {
+		return clock.scheduleAtFixedRate(task, delay, period);
+	}
+
+	/**
+	 * Колесо таймеров среды с тактом {@link #TIMER_TICK} (запускается при первом обращении)
+	 */
+	public synchronized TimingWheel getTimers() {
+		if (timers == null) {
+			timers = new TimingWheel(clock, TIMER_TICK);
+			timers.start();
+		}
+		return timers;
+	}
+
+	public int size() {
+		return scheduled.size();
+	}
+
+	public void shutdown() {
+		synchronized (this) {
+			if (timers != null) timers.stop();
+		}
+		scheduled.values().forEach(Clock.Task::cancel);
+		scheduled.clear();
+		if (ownClock != null) ownClock.shutdown();
+		legacy.shutdownNow();
+	}
+
+	/**
+	 * Ошибка одного устройства не должна отменять его дальнейшую периодическую работу
+	 */
+	private static void tick(Periodic device) {
+		try {
+			device.tick();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static ThreadFactory daemon(String name) {
+		return runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -1,5 +1,6 @@
 package device;
 
+import log.AsyncLog;
 
 
 /**
@@ -17,12 +18,30 @@ abstract public class ElectronicDevice implements Switchable, Runnable {
 		this.devID = devID;
 	}
 
+	/**
+	 * Сообщения устройств передаются асинхронному журналу {@link AsyncLog}: вызывающий поток не форматирует
+	 * строки и не ждет вывода. Шаблон с аргументами форматируется потоком записи журнала
+	 */
 	protected void showMsg(String msg) {
-		System.out.println(String.format("%s: %s", description, msg));
+		AsyncLog.getDefault().log(AsyncLog.INFO, description, msg);
+	}
+
+	protected void showMsg(String template, long arg) {
+		AsyncLog.getDefault().log(AsyncLog.INFO, description, template, arg);
+	}
+
+	protected void showMsg(String template, Object arg) {
+		AsyncLog.getDefault().log(AsyncLog.INFO, description, template, arg);
+	}
+
+	protected void showMsg(String template, Object arg0, double arg1, Object arg2) {
+		AsyncLog log = AsyncLog.getDefault();
+		AsyncLog.Event event = log.claim(AsyncLog.INFO, description, template);
+		if (event != null) log.publish(event.arg(arg0).arg(arg1).arg(arg2));
 	}
 
 	protected void showErr(String error) {
-		System.err.println(String.format("%s: %s", description, error));
+		AsyncLog.getDefault().log(AsyncLog.ERROR, description, error);
 	}
 
 	public String toString() {
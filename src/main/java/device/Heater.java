@@ -12,11 +12,12 @@ public class Heater extends ElectronicDevice implements Adjustable, Influencer {
 	final private EnvCondition influenced;
 	final private double efficiency;
 	private final Environment env;
-	protected double currentPower;
+	volatile protected double currentPower;
 	private int suspendFactor = 10;
 	private int workingFactor = 20;
+	private final PowerRamp ramp;
 
-	protected boolean isOnline;
+	volatile protected boolean isOnline;
 	static int ID = 1;
 
 	public Heater(String description, int power, double efficiency, Environment env) {
@@ -25,6 +26,8 @@ public class Heater extends ElectronicDevice implements Adjustable, Influencer {
 		influenced = EnvCondition.TEMPERATURE;
 		this.efficiency = efficiency;
 		suspendFactor = workingFactor;
+		currentPower = workingFactor * power / 100;
+		ramp = new PowerRamp(workingFactor, env.getClock(), this::applyFactor);
 	}
 
 	@Override
@@ -35,6 +38,10 @@ public class Heater extends ElectronicDevice implements Adjustable, Influencer {
 		env.addInfluencer(this);
 	}
 
+	/**
+	 * Выключение прекращает воздействие сразу, без плавного снижения мощности. Последняя заданная мощность
+	 * запоминается для следующего включения
+	 */
 	@Override
 	public void powerOff() {
 		setPowerFactor(10, true);
@@ -64,30 +71,31 @@ public class Heater extends ElectronicDevice implements Adjustable, Influencer {
 	}
 
 	public void setPowerFactor(int factorPercent, boolean save) {
-		int tmpFactor = workingFactor;
-		setPowerFactor(factorPercent);
+		int tmpFactor = ramp.getTarget();
+		ramp.set(factorPercent);
 		if(save) suspendFactor = tmpFactor;
 	}
 
+	/**
+	 * Задание мощности. У включенного устройства мощность меняется плавно {@link PowerRamp} - метод
+	 * возвращает управление сразу, не дожидаясь окончания перехода
+	 */
 	@Override
-	synchronized public void setPowerFactor(int factorPercent) {
+	public void setPowerFactor(int factorPercent) {
 		suspendFactor = factorPercent;
-		int sign = -(int) Math.signum(workingFactor - factorPercent);
-		if(isOnline) {
-			while (Math.signum(workingFactor - factorPercent)*sign < 0) {
-				workingFactor += 10*sign;
-				showMsg(String.format("heating at %d%% power", (int) workingFactor));
-				currentPower += power * workingFactor;
-				try {
-					Thread.sleep(300);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			workingFactor = factorPercent;
-			suspendFactor = workingFactor;
-		}
+		if (isOnline) ramp.rampTo(factorPercent);
+	}
+
+	@Override
+	public int getPowerFactor() {
+		return suspendFactor;
+	}
+
+	private void applyFactor(int factorPercent) {
+		workingFactor = factorPercent;
 		currentPower = workingFactor * power / 100;
+		env.influenceChanged(this);
+		if (isOnline) showMsg("heating at %d%% power", factorPercent);
 	}
 
 	@Override
@@ -102,7 +110,7 @@ public class Heater extends ElectronicDevice implements Adjustable, Influencer {
 
 	@Override
 	public void showStatus() {
-		showMsg(" is " + (isOnline ? "on" : "off"));
+		showMsg(isOnline ? " is on" : " is off");
 	}
 
 	@Override
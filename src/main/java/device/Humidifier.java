@@ -71,7 +71,7 @@ public class Humidifier extends ElectronicDevice implements Influencer {
 
 	@Override
 	public void showStatus() {
-		showMsg(" is " + (isOnline ? "on" : "off"));
+		showMsg(isOnline ? " is on" : " is off");
 	}
 
 	@Override
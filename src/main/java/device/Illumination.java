@@ -75,8 +75,14 @@ public class Illumination extends ElectronicDevice implements Adjustable, Influe
 	@Override
 	public void setPowerFactor(int factorPercent) {
 		workingFactor = factorPercent;
-		showMsg(String.format("shining at %d%% power", factorPercent));
+		showMsg("shining at %d%% power", factorPercent);
 		currentPower = workingFactor * power / 100;
+		env.influenceChanged(this);
+	}
+
+	@Override
+	public int getPowerFactor() {
+		return workingFactor;
 	}
 
 	@Override
@@ -90,7 +96,7 @@ public class Illumination extends ElectronicDevice implements Adjustable, Influe
 
 	@Override
 	public void showStatus() {
-		showMsg(" is " + (isOnline ? "on" : "off"));
+		showMsg(isOnline ? " is on" : " is off");
 	}
 
 	@Override
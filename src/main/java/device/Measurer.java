@@ -11,4 +11,13 @@ import env.Measurable;
 public interface Measurer {
 	String getMeasuredCharacterictic();
 	Measurable getMeasured();
+
+	/**
+	 * Публикация показаний в кольцевой буфер {@link ReadingRing} вместо уведомления получателей параметром
+	 * @param ring - буфер; null - прекратить публикацию
+	 * @return false - измеритель не умеет публиковать показания (получатели подписываются на параметр)
+	 */
+	default boolean publishTo(ReadingRing ring) {
+		return false;
+	}
 }
@@ -0,0 +1,20 @@
+package device;
+
+
+
+/**
+ * Интерфейс устройства с периодической работой (например, измеритель, сообщающий о своем состоянии).
+ * Вместо собственного потока с бесконечным циклом такое устройство исполняется общим планировщиком
+ * {@link DeviceRuntime}, который вызывает {@link #tick()} с заданным периодом
+ */
+public interface Periodic {
+	/**
+	 * период работы, мс
+	 */
+	long getPeriod();
+
+	/**
+	 * один шаг периодической работы устройства
+	 */
+	void tick();
+}
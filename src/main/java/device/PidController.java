@@ -0,0 +1,91 @@
+package device;
+
+import env.EnvCondition;
+
+
+
+/**
+ * ПИД-регулятор параметра климата: по отклонению измеренного значения от уставки вычисляет мощность
+ * воздействия в процентах от -100 (устройства отрицательного воздействия на полной мощности)
+ * до 100 (устройства положительного воздействия на полной мощности).
+ *
+ * Дифференциальная составляющая вычисляется по измеренному значению, а не по отклонению, поэтому изменение
+ * уставки не вызывает скачка мощности. Интеграл не накапливается, пока выход ограничен в сторону отклонения
+ * (anti-windup), поэтому после долгого насыщения нет перерегулирования из-за накопленного интеграла.
+ */
+public class PidController {
+	public static final double MAX_OUTPUT = 100;
+	/**
+	 * шаг задания мощности устройствам, % - меньшие изменения выхода не переключают мощность каждую секунду
+	 */
+	public static final int RESOLUTION = 5;
+
+	private final double kp;
+	private final double ki;
+	private final double kd;
+	private double integral;
+	private double lastMeasured = Double.NaN;
+	private long lastTime;
+	private double output;
+
+	/**
+	 * @param kp - пропорциональный коэффициент, % на единицу отклонения
+	 * @param ki - интегральный коэффициент, % на единицу отклонения за секунду
+	 * @param kd - дифференциальный коэффициент, % на единицу изменения в секунду
+	 */
+	public PidController(double kp, double ki, double kd) {
+		this.kp = kp;
+		this.ki = ki;
+		this.kd = kd;
+	}
+
+	/**
+	 * Коэффициенты по умолчанию, подобранные для модели комнаты {@link env.Room}
+	 */
+	public static PidController forCondition(EnvCondition condition) {
+		switch (condition) {
+			case TEMPERATURE:
+				return new PidController(40, 2, 0);
+			case ILLUMINANCE:
+				return new PidController(0.2, 0.005, 0);
+			default:
+				return new PidController(20, 0.5, 0);
+		}
+	}
+
+	/**
+	 * Шаг регулирования
+	 * @param setpoint - уставка
+	 * @param measured - измеренное значение
+	 * @param now - время, мс
+	 * @return мощность воздействия, % (знак - направление воздействия)
+	 */
+	public synchronized double update(double setpoint, double measured, long now) {
+		double error = setpoint - measured;
+		double dt = Double.isNaN(lastMeasured) ? 0 : (now - lastTime) / 1000.0;
+		double derivative = dt > 0 ? -(measured - lastMeasured) / dt : 0;
+		double candidate = integral + error * dt;
+		double raw = kp * error + ki * candidate + kd * derivative;
+		output = Math.max(-MAX_OUTPUT, Math.min(MAX_OUTPUT, raw));
+		if (output == raw || Math.signum(error) != Math.signum(raw)) integral = candidate;
+		lastMeasured = measured;
+		lastTime = now;
+		return output;
+	}
+
+	/**
+	 * последний выход, %
+	 */
+	public synchronized double getOutput() {
+		return output;
+	}
+
+	/**
+	 * Сброс состояния (например, после изменения состава устройств)
+	 */
+	public synchronized void reset() {
+		integral = 0;
+		lastMeasured = Double.NaN;
+		output = 0;
+	}
+}
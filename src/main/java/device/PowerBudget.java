@@ -0,0 +1,327 @@
+package device;
+
+import env.EnvCondition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * Распределение ограничения мощности дома между регулируемыми устройствами влияния.
+ *
+ * Устройства разделены на группы по параметру климата и знаку воздействия. Группе задается потребность -
+ * мощность, которую запросило управление (гистерезис или ПИД-регулятор), и вес - отклонение параметра
+ * в сторону воздействия группы. Ценность ватта устройства - вес группы, умноженный на воздействие устройства
+ * на ватт. Если потребности всех групп не превышают ограничения, каждая группа получает потребность, иначе
+ * мощность получают устройства с наибольшей ценностью ватта, пока ограничение не исчерпано (дробный рюкзак).
+ *
+ * Внутри группы устройства упорядочены по воздействию на ватт (при первом распределении после регистрации),
+ * и хранятся суммы мощностей их префиксов, поэтому распределение - всегда префикс группы на полной мощности
+ * и одно устройство на частичной. Порог ценности находится двоичным поиском по суммам префиксов, остаток
+ * ограничения передается блоками устройств равной ценности (например, одной модели) целиком - время
+ * не зависит от числа устройств, а мощность меняется только у устройств между прежней и новой границей
+ * префикса. Поэтому перепланирование тысяч устройств укладывается в шаг управления.
+ *
+ * Распределяется мощность только включенных устройств: выключенные входят в суммы префиксов с нулевой
+ * мощностью, и мощность им не задается. Суммы префиксов группы пересчитываются при первом распределении
+ * после включения или выключения ее устройств (управление переключает группу целиком, обычно не чаще
+ * нескольких раз в минуту), а включенному устройству мощность задается заново - при включении устройство
+ * восстанавливает мощность, с которой было выключено.
+ *
+ * Нерегулируемые устройства влияния не распределяются: включенные учитываются как постоянная нагрузка,
+ * уменьшающая доступную мощность.
+ */
+class PowerBudget {
+	private static final int ITERATIONS = 64;
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+
+	private final Group[] groups = new Group[CONDITIONS.length * 2];
+	private final double[] allocation = new double[groups.length];
+	private final Map<Adjustable, Entry> entries = new IdentityHashMap<>();
+
+	/**
+	 * Регулируемое устройство и заданная ему мощность
+	 */
+	private static final class Entry {
+		final Adjustable device;
+		final Group group;
+		final double density;
+		final double watts;
+		boolean online;
+		int factor = -1;
+
+		Entry(Adjustable device, Group group, double density, double watts, boolean online) {
+			this.device = device;
+			this.group = group;
+			this.density = density;
+			this.watts = watts;
+			this.online = online;
+		}
+	}
+
+	/**
+	 * Регулируемые устройства влияния на один параметр климата в одну сторону, по убыванию воздействия на ватт.
+	 * Добавленные устройства упорядочиваются один раз перед следующим распределением
+	 */
+	private static final class Group {
+		final List<Entry> added = new ArrayList<>();
+		Entry[] entries = new Entry[0];
+		double[] density = new double[0];
+		/**
+		 * prefix[k] - суммарная мощность включенных устройств среди первых k
+		 */
+		double[] prefix = {0};
+		/**
+		 * суммарная мощность включенных устройств
+		 */
+		double capacity;
+		double demand;
+		double weight;
+		/**
+		 * граница префикса устройств на полной мощности; -1 - мощность задается всем устройствам группы
+		 */
+		int full = -1;
+		/**
+		 * устройства включались или выключались - суммы префиксов нужно пересчитать
+		 */
+		boolean switched;
+
+		int size() {
+			return entries.length;
+		}
+
+		void add(Entry entry) {
+			added.add(entry);
+			if (entry.online) capacity += entry.watts;
+		}
+
+		void prepare() {
+			if (!added.isEmpty()) {
+				Entry[] merged = Arrays.copyOf(entries, entries.length + added.size());
+				for (int i = 0; i < added.size(); i++) {
+					merged[entries.length + i] = added.get(i);
+				}
+				added.clear();
+				Arrays.sort(merged, (a, b) -> Double.compare(b.density, a.density));
+				entries = merged;
+				density = new double[merged.length];
+				prefix = new double[merged.length + 1];
+				for (int i = 0; i < merged.length; i++) {
+					density[i] = merged[i].density;
+				}
+			} else if (!switched) {
+				return;
+			}
+			for (int i = 0; i < entries.length; i++) {
+				prefix[i + 1] = prefix[i] + (entries[i].online ? entries[i].watts : 0);
+			}
+			switched = false;
+			full = -1;
+		}
+
+		/**
+		 * Мощность устройств группы с ценностью ватта не ниже порога
+		 */
+		double wattsAbove(double threshold) {
+			if (weight <= 0) return 0;
+			double minDensity = threshold / weight;
+			int low = 0, high = density.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (density[middle] >= minDensity) low = middle + 1;
+				else high = middle;
+			}
+			return prefix[low];
+		}
+
+		/**
+		 * Индекс устройства, которое получит следующий ватт при распределенной мощности allocation
+		 */
+		int next(double allocation) {
+			// последний префикс, не превышающий распределенной мощности (выключенные устройства не меняют сумму)
+			int low = 0, high = prefix.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (prefix[middle] <= allocation) low = middle + 1;
+				else high = middle;
+			}
+			return low - 1;
+		}
+
+		/**
+		 * Граница блока устройств с тем же воздействием на ватт, что у устройства index
+		 */
+		int blockEnd(int index) {
+			double value = density[index];
+			int low = index + 1, high = density.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (density[middle] >= value) low = middle + 1;
+				else high = middle;
+			}
+			return low;
+		}
+	}
+
+	PowerBudget() {
+		for (int i = 0; i < groups.length; i++) {
+			groups[i] = new Group();
+		}
+	}
+
+	private static int index(EnvCondition condition, int influenceSign) {
+		return condition.ordinal() * 2 + (influenceSign > 0 ? 1 : 0);
+	}
+
+	/**
+	 * Добавление регулируемого устройства влияния с известной мощностью
+	 */
+	void add(Adjustable device, EnvCondition condition, int influenceSign, double influence, double watts) {
+		if (watts <= 0 || influence == 0) return;
+		Group group = groups[index(condition, influenceSign)];
+		Entry entry = new Entry(device, group, Math.abs(influence) / watts, watts, device.isOnline());
+		entries.put(device, entry);
+		group.add(entry);
+	}
+
+	/**
+	 * Включение или выключение устройства: мощность группы меняется сразу, суммы префиксов пересчитываются
+	 * при следующем распределении, а включенному устройству мощность будет задана заново
+	 */
+	void setOnline(Adjustable device, boolean online) {
+		Entry entry = entries.get(device);
+		if (entry == null || entry.online == online) return;
+		entry.online = online;
+		entry.factor = -1;
+		Group group = entry.group;
+		group.capacity = Math.max(0, group.capacity + (online ? entry.watts : -entry.watts));
+		group.demand = Math.min(group.demand, group.capacity);
+		group.switched = true;
+	}
+
+	/**
+	 * Суммарная мощность включенных устройств группы, Вт
+	 */
+	double capacity(EnvCondition condition, int influenceSign) {
+		return groups[index(condition, influenceSign)].capacity;
+	}
+
+	/**
+	 * Потребность и вес группы устройств
+	 * @param demand - запрошенная мощность, Вт
+	 * @param weight - отклонение параметра в сторону воздействия группы (0 - воздействие не нужно)
+	 */
+	void setDemand(EnvCondition condition, int influenceSign, double demand, double weight) {
+		Group group = groups[index(condition, influenceSign)];
+		group.demand = Math.max(0, Math.min(demand, group.capacity));
+		group.weight = Math.max(0, weight);
+	}
+
+	/**
+	 * Распределение мощности и задание ее устройствам, мощность которых изменилась
+	 * @param cap - доступная мощность, Вт
+	 * @return число устройств, мощность которых изменена
+	 */
+	int plan(double cap) {
+		cap = Math.max(0, cap);
+		double demand = 0;
+		for (Group group : groups) {
+			group.prepare();
+			demand += group.demand;
+		}
+		if (demand <= cap) {
+			for (int i = 0; i < groups.length; i++) {
+				allocation[i] = groups[i].demand;
+			}
+		} else {
+			allocateByValue(cap);
+		}
+		int changed = 0;
+		for (int i = 0; i < groups.length; i++) {
+			changed += apply(groups[i], allocation[i]);
+		}
+		return changed;
+	}
+
+	/**
+	 * Двоичный поиск наименьшего порога ценности ватта, при котором распределение не превышает ограничения,
+	 * и передача остатка группе с наиболее ценным следующим устройством - сразу всему блоку устройств
+	 * той же ценности, чтобы число шагов не росло с числом одинаковых устройств
+	 */
+	private void allocateByValue(double cap) {
+		double low = 0, high = 0;
+		for (Group group : groups) {
+			if (group.size() > 0) high = Math.max(high, group.weight * group.density[0]);
+		}
+		high = Math.nextUp(high);
+		for (int i = 0; i < ITERATIONS && low < high; i++) {
+			double middle = (low + high) / 2;
+			if (allocated(middle, null) <= cap) high = middle;
+			else low = Math.nextUp(middle);
+		}
+		double remaining = cap - allocated(high, allocation);
+		while (remaining > 0) {
+			int best = -1;
+			double bestValue = 0;
+			for (int i = 0; i < groups.length; i++) {
+				Group group = groups[i];
+				if (allocation[i] >= group.demand) continue;
+				int next = group.next(allocation[i]);
+				if (next >= group.size()) continue;
+				double value = group.weight * group.density[next];
+				if (value > bestValue) {
+					bestValue = value;
+					best = i;
+				}
+			}
+			if (best < 0) break;
+			Group group = groups[best];
+			int next = group.next(allocation[best]);
+			int end = group.blockEnd(next);
+			double extra = Math.min(remaining, Math.min(group.demand, group.prefix[end]) - allocation[best]);
+			allocation[best] += extra;
+			remaining -= extra;
+		}
+	}
+
+	private double allocated(double threshold, double[] allocation) {
+		double total = 0;
+		for (int i = 0; i < groups.length; i++) {
+			double watts = Math.min(groups[i].demand, groups[i].wattsAbove(threshold));
+			if (allocation != null) allocation[i] = watts;
+			total += watts;
+		}
+		return total;
+	}
+
+	/**
+	 * Задание мощности включенным устройствам группы: префикс на полной мощности, следующее - на частичной,
+	 * остальные - 0. Мощность меняется только у устройств между прежней и новой границей префикса
+	 */
+	private static int apply(Group group, double allocation) {
+		int size = group.size();
+		if (size == 0) return 0;
+		int full = Math.min(group.next(allocation), size);
+		int from = group.full < 0 ? 0 : Math.min(group.full, full);
+		int to = group.full < 0 ? size : Math.min(size, Math.max(group.full, full) + 1);
+		int changed = 0;
+		for (int i = from; i < to; i++) {
+			Entry entry = group.entries[i];
+			if (!entry.online) continue;
+			int factor;
+			if (i < full) factor = 100;
+			else if (i == full) factor = (int) ((allocation - group.prefix[full]) * 100 / entry.watts);
+			else factor = 0;
+			if (entry.factor == factor) continue;
+			entry.factor = factor;
+			entry.device.setPowerFactor(factor);
+			changed++;
+		}
+		group.full = full;
+		return changed;
+	}
+}
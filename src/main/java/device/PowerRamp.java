@@ -0,0 +1,78 @@
+package device;
+
+import env.Clock;
+
+
+
+/**
+ * Плавное изменение мощности регулируемого устройства - конечный автомат, переходящий к заданной мощности
+ * шагами по {@link #STEP}% раз в {@link #STEP_PERIOD} мс. Шаги планируются часами среды {@link Clock}, поэтому
+ * задание мощности не блокирует вызывающий поток (например, поток контроллера), а множество устройств
+ * могут менять мощность одновременно.
+ */
+public class PowerRamp {
+	public static final int STEP = 10;
+	public static final long STEP_PERIOD = 300;
+
+	/**
+	 * Получатель каждого нового значения мощности (в процентах)
+	 */
+	public interface Listener {
+		void factorChanged(int factorPercent);
+	}
+
+	private final Clock clock;
+	private final Listener listener;
+	private int current;
+	private int target;
+	private Clock.Task task;
+
+	public PowerRamp(int factorPercent, Clock clock, Listener listener) {
+		this.clock = clock;
+		this.listener = listener;
+		current = target = factorPercent;
+	}
+
+	/**
+	 * Начало плавного перехода к заданной мощности. Возвращает управление сразу
+	 */
+	public synchronized void rampTo(int factorPercent) {
+		target = factorPercent;
+		if (current == target || task != null) return;
+		task = clock.schedule(this::step, STEP_PERIOD);
+	}
+
+	/**
+	 * Немедленная установка мощности с отменой текущего перехода
+	 */
+	public synchronized void set(int factorPercent) {
+		if (task != null) {
+			task.cancel();
+			task = null;
+		}
+		current = target = factorPercent;
+		listener.factorChanged(current);
+	}
+
+	public synchronized int getCurrent() {
+		return current;
+	}
+
+	public synchronized int getTarget() {
+		return target;
+	}
+
+	public synchronized boolean isRamping() {
+		return task != null;
+	}
+
+	private synchronized void step() {
+		task = null;
+		if (current == target) return;
+		int sign = current < target ? 1 : -1;
+		current += sign * STEP;
+		if ((target - current) * sign < 0) current = target;
+		listener.factorChanged(current);
+		if (current != target) task = clock.schedule(this::step, STEP_PERIOD);
+	}
+}
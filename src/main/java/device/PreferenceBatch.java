@@ -0,0 +1,49 @@
+package device;
+
+import env.EnvCondition;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+
+/**
+ * Пакет изменений желаемых значений параметров климата для нескольких помещений (контроллеров), например
+ * смена расписания во всем здании. Изменения накапливаются и применяются одним вызовом помещение за помещением:
+ * для каждого помещения - {@link Controller#setPrefferences}, то есть атомарно для помещения и с одним обращением
+ * к его реестру устройств вместо обращения на каждое изменение. Одновременно удерживается блокировка только
+ * одного помещения, поэтому шаги управления остальных помещений не ждут весь пакет, а размер пакета
+ * не ограничен. Повторное изменение того же параметра помещения заменяет прежнее
+ */
+public class PreferenceBatch {
+	private final Map<Controller, Map<EnvCondition, Double>> updates = new LinkedHashMap<>();
+	private int size;
+
+	public PreferenceBatch set(Controller room, EnvCondition condition, double value) {
+		Map<EnvCondition, Double> values = updates.computeIfAbsent(room, key -> new EnumMap<>(EnvCondition.class));
+		if (values.put(condition, value) == null) size++;
+		return this;
+	}
+
+	/**
+	 * @return число накопленных изменений
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Применение накопленных изменений по помещениям (пакет после этого пуст)
+	 * @return число переключенных устройств
+	 */
+	public int apply() {
+		int switched = 0;
+		for (Map.Entry<Controller, Map<EnvCondition, Double>> entry : updates.entrySet()) {
+			switched += entry.getKey().setPrefferences(entry.getValue());
+		}
+		updates.clear();
+		size = 0;
+		return switched;
+	}
+}
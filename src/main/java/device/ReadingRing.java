@@ -0,0 +1,233 @@
+package device;
+
+import env.Measurable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+
+/**
+ * Кольцевой буфер показаний измерителей (в духе Disruptor): измерители публикуют показания, читатели
+ * (например, контроллеры) забирают их пакетами в порядке публикации.
+ *
+ * Ячейки создаются один раз и переиспользуются - публикация не создает объектов. Каждое поле имеет одного
+ * писателя: ячейку заполняет производитель, занявший ее номер последовательности, номер прочитанного -
+ * только его читатель. Общий для производителей лишь счетчик занятых номеров (одно атомарное увеличение
+ * на показание), поэтому публиковать могут потоки шагов комнат и шлюз удаленных измерителей одновременно.
+ *
+ * Барьеры последовательностей:
+ * - читатель видит показания до наибольшего номера, все ячейки до которого опубликованы (номер круга в ячейке)
+ * - производитель не занимает ячейку, пока ее предыдущее показание не прочитано всеми читателями -
+ *   при отставании читателя производитель ждет, показания не теряются
+ */
+public class ReadingRing {
+	/**
+	 * наибольший размер пакета читателя по умолчанию
+	 */
+	public static final int DEFAULT_BATCH = 256;
+	private static final int SPINS = 100;
+	private static final int YIELDS = 100;
+	private static final long IDLE_PARK = 50_000;
+
+	/**
+	 * Ячейка буфера - показание измерителя
+	 */
+	public static final class Reading {
+		Measurable source;
+		double value;
+
+		public Measurable getSource() {
+			return source;
+		}
+
+		public double getValue() {
+			return value;
+		}
+	}
+
+	/**
+	 * Обработчик показаний читателя
+	 */
+	public interface Handler {
+		/**
+		 * @param endOfBatch - последнее показание пакета (например, для действий раз на пакет)
+		 */
+		void onReading(Measurable source, double value, boolean endOfBatch);
+	}
+
+	private final Reading[] slots;
+	private final int mask;
+	private final int shift;
+	/**
+	 * номер круга, на котором опубликована ячейка
+	 */
+	private final AtomicIntegerArray published;
+	/**
+	 * наибольший занятый номер последовательности
+	 */
+	private final AtomicLong claimed = new AtomicLong(-1);
+	/**
+	 * Читатели. Массив заменяется целиком при добавлении и удалении (copy-on-write)
+	 */
+	private volatile Reader[] readers = new Reader[0];
+	/**
+	 * наименьший номер, прочитанный всеми читателями, при последней проверке (может отставать)
+	 */
+	private volatile long gate = -1;
+
+	/**
+	 * @param capacity - емкость буфера (округляется вверх до степени двойки)
+	 */
+	public ReadingRing(int capacity) {
+		int size = capacity <= 1 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		slots = new Reading[size];
+		for (int i = 0; i < size; i++) slots[i] = new Reading();
+		mask = size - 1;
+		shift = Integer.numberOfTrailingZeros(size);
+		published = new AtomicIntegerArray(size);
+		for (int i = 0; i < size; i++) published.set(i, -1);
+	}
+
+	public int capacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Публикация показания. Если буфер заполнен непрочитанными показаниями, ожидает читателей
+	 */
+	public void publish(Measurable source, double value) {
+		long sequence = next();
+		Reading reading = slots[(int) sequence & mask];
+		reading.source = source;
+		reading.value = value;
+		published.lazySet((int) sequence & mask, (int) (sequence >>> shift));
+	}
+
+	private long next() {
+		long sequence = claimed.incrementAndGet();
+		long wrap = sequence - slots.length;
+		if (wrap > gate) {
+			long minimum;
+			int idle = 0;
+			while (wrap > (minimum = minimumRead(sequence - 1))) {
+				idle = idle(idle);
+			}
+			gate = minimum;
+		}
+		return sequence;
+	}
+
+	private long minimumRead(long minimum) {
+		for (Reader reader : readers) {
+			minimum = Math.min(minimum, reader.sequence.get());
+		}
+		return minimum;
+	}
+
+	/**
+	 * Наибольший номер из [from, to], все показания до которого опубликованы, или from - 1
+	 */
+	private long highestPublished(long from, long to) {
+		to = Math.min(to, claimed.get());
+		for (long sequence = from; sequence <= to; sequence++) {
+			if (published.get((int) sequence & mask) != (int) (sequence >>> shift)) return sequence - 1;
+		}
+		return to;
+	}
+
+	/**
+	 * Новый читатель получает показания, опубликованные после его добавления
+	 */
+	public synchronized Reader newReader() {
+		Reader reader = new Reader(claimed.get());
+		Reader[] copy = Arrays.copyOf(readers, readers.length + 1);
+		copy[readers.length] = reader;
+		readers = copy;
+		return reader;
+	}
+
+	/**
+	 * Удаление читателя - производители больше не ожидают его
+	 */
+	public synchronized void remove(Reader reader) {
+		for (int i = 0; i < readers.length; i++) {
+			if (readers[i] != reader) continue;
+			Reader[] copy = new Reader[readers.length - 1];
+			System.arraycopy(readers, 0, copy, 0, i);
+			System.arraycopy(readers, i + 1, copy, i, readers.length - i - 1);
+			readers = copy;
+			return;
+		}
+	}
+
+	/**
+	 * Ожидание: сначала активное, затем с уступкой процессора, затем с короткой парковкой
+	 */
+	private static int idle(int idle) {
+		if (idle < SPINS) {
+			return idle + 1;
+		} else if (idle < SPINS + YIELDS) {
+			Thread.yield();
+			return idle + 1;
+		}
+		LockSupport.parkNanos(IDLE_PARK);
+		return idle;
+	}
+
+	/**
+	 * Читатель буфера. Номер прочитанного обновляется один раз на пакет
+	 */
+	public final class Reader {
+		private final AtomicLong sequence;
+		private volatile boolean running = true;
+
+		private Reader(long sequence) {
+			this.sequence = new AtomicLong(sequence);
+		}
+
+		/**
+		 * Обработка опубликованных показаний без ожидания
+		 * @return число обработанных показаний
+		 */
+		public int poll(Handler handler, int maxBatch) {
+			long next = sequence.get() + 1;
+			long available = highestPublished(next, next + maxBatch - 1);
+			if (available < next) return 0;
+			for (long current = next; current <= available; current++) {
+				Reading reading = slots[(int) current & mask];
+				handler.onReading(reading.source, reading.value, current == available);
+			}
+			sequence.lazySet(available);
+			return (int) (available - next + 1);
+		}
+
+		/**
+		 * Обработка показаний пакетами до {@link #halt()}. Без показаний читатель ожидает
+		 */
+		public void run(Handler handler, int maxBatch) {
+			int idle = 0;
+			while (running) {
+				if (poll(handler, maxBatch) > 0) idle = 0;
+				else idle = idle(idle);
+			}
+		}
+
+		/**
+		 * Остановка {@link #run} и удаление читателя из буфера
+		 */
+		public void halt() {
+			running = false;
+			remove(this);
+		}
+
+		/**
+		 * @return число показаний, опубликованных, но еще не прочитанных читателем
+		 */
+		public long lag() {
+			return Math.max(0, claimed.get() - sequence.get());
+		}
+	}
+}
@@ -0,0 +1,497 @@
+package device;
+
+import env.ConditionListener;
+import env.EnvCondition;
+import env.Measurable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+
+
+/**
+ * Правила автоматизации пользователя вида "если влажность > 70 и освещенность < 100, то увлажнитель на 30%".
+ * Правило - набор условий (должны выполняться все) и действие над устройством при переходе правила
+ * в выполненное состояние, а также, при необходимости, обратное действие при выходе из него.
+ * Условие - сравнение параметра климата с порогом или состояние устройства (включено/выключено).
+ *
+ * Правила оцениваются инкрементально: для каждого правила хранится число выполненных условий, а при изменении
+ * значения пересчитываются только условия, сменившие истинность. Условия сравнения индексируются по параметру
+ * климата и знаку сравнения с порогами по возрастанию, поэтому условия, сменившие истинность при изменении
+ * значения от a до b, - непрерывный отрезок порогов между a и b, находимый двоичным поиском. Время обработки
+ * изменения зависит от числа таких условий, а не от числа правил. Условия состояния индексируются по устройству.
+ * Новые условия упорядочиваются один раз перед следующим изменением значения, а условия удаленных правил
+ * убираются из индексов, когда удаленных правил становится больше действующих.
+ *
+ * Действия не выполняются при оценке (она происходит в потоках измерителей и реестра устройств): правила,
+ * сменившие состояние, ставятся в очередь, и контроллер выполняет их действия в своем шаге {@link #drain}.
+ * Действие выполняется, только если состояние правила отличается от состояния при последнем действии, поэтому
+ * колебание значения около порога между шагами не приводит к лишним переключениям
+ */
+public class RuleEngine implements ConditionListener {
+	/**
+	 * мощность действия: выключение устройства
+	 */
+	public static final int OFF = 0;
+	/**
+	 * мощность действия: действия нет
+	 */
+	public static final int NO_ACTION = -1;
+	/**
+	 * число условий свободного или удаленного номера правила
+	 */
+	private static final int FREE = -1;
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+
+	/**
+	 * Описание правила: условия и действие задаются цепочкой вызовов и копируются при добавлении в {@link RuleEngine}
+	 */
+	public static final class Rule {
+		private final List<EnvCondition> conditions = new ArrayList<>();
+		private final List<Boolean> above = new ArrayList<>();
+		private final List<Double> thresholds = new ArrayList<>();
+		private final List<Switchable> devices = new ArrayList<>();
+		private final List<Boolean> online = new ArrayList<>();
+		private Switchable target;
+		private int factor = NO_ACTION;
+		private int otherwise = NO_ACTION;
+
+		/**
+		 * Условие: значение параметра больше порога
+		 */
+		public Rule above(EnvCondition condition, double threshold) {
+			return compare(condition, true, threshold);
+		}
+
+		/**
+		 * Условие: значение параметра меньше порога
+		 */
+		public Rule below(EnvCondition condition, double threshold) {
+			return compare(condition, false, threshold);
+		}
+
+		private Rule compare(EnvCondition condition, boolean above, double threshold) {
+			if (Double.isNaN(threshold)) throw new IllegalArgumentException("invalid threshold for " + condition.getName());
+			conditions.add(condition);
+			this.above.add(above);
+			thresholds.add(threshold);
+			return this;
+		}
+
+		/**
+		 * Условие: устройство включено (online = true) или выключено. Учитываются переключения через контроллер
+		 */
+		public Rule state(Switchable device, boolean online) {
+			devices.add(device);
+			this.online.add(online);
+			return this;
+		}
+
+		/**
+		 * Действие при выполнении правила
+		 * @param factorPercent - {@link #OFF} - выключение устройства; иначе включение, регулируемому устройству
+		 *                      задается мощность, %
+		 */
+		public Rule then(Switchable device, int factorPercent) {
+			target = device;
+			factor = factorPercent;
+			return this;
+		}
+
+		/**
+		 * Действие над тем же устройством при выходе правила из выполненного состояния
+		 */
+		public Rule otherwise(int factorPercent) {
+			otherwise = factorPercent;
+			return this;
+		}
+
+		int size() {
+			return conditions.size() + devices.size();
+		}
+	}
+
+	/**
+	 * Условия сравнения одного параметра климата с одним знаком по возрастанию порога
+	 */
+	private static final class Index {
+		final boolean above;
+		double[] thresholds = new double[0];
+		int[] rules = new int[0];
+		int size;
+		/**
+		 * добавленные условия {порог, номер правила}, вливаются в индекс перед следующим изменением значения
+		 */
+		final List<double[]> added = new ArrayList<>();
+
+		Index(boolean above) {
+			this.above = above;
+		}
+
+		/**
+		 * Граница истинных условий при значении value: для "больше" истинны условия [0, bound) - пороги меньше
+		 * значения, для "меньше" - [bound, size), пороги больше значения. При неизвестном значении (NaN)
+		 * истинных условий нет
+		 */
+		int bound(double value) {
+			if (Double.isNaN(value)) return above ? 0 : size;
+			int low = 0, high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (above ? thresholds[middle] < value : thresholds[middle] <= value) low = middle + 1;
+				else high = middle;
+			}
+			return low;
+		}
+
+		boolean holds(double threshold, double value) {
+			return above ? value > threshold : value < threshold;
+		}
+	}
+
+	/**
+	 * Условия состояния одного устройства
+	 */
+	private static final class DeviceIndex {
+		boolean online;
+		int[] rules = new int[4];
+		boolean[] expected = new boolean[4];
+		int size;
+
+		DeviceIndex(boolean online) {
+			this.online = online;
+		}
+
+		void add(int rule, boolean online) {
+			if (size == rules.length) {
+				rules = Arrays.copyOf(rules, size * 2);
+				expected = Arrays.copyOf(expected, size * 2);
+			}
+			rules[size] = rule;
+			expected[size++] = online;
+		}
+	}
+
+	private final Index[] above = new Index[CONDITIONS.length];
+	private final Index[] below = new Index[CONDITIONS.length];
+	private final Map<Switchable, DeviceIndex> states = new IdentityHashMap<>();
+	/**
+	 * последние значения параметров климата
+	 */
+	private final double[] values = new double[CONDITIONS.length];
+	private boolean merged = true;
+
+	// правила по номеру
+	private int[] required = new int[0];
+	private int[] satisfied = new int[0];
+	/**
+	 * выполнено ли правило при последнем действии
+	 */
+	private boolean[] acted = new boolean[0];
+	private boolean[] queued = new boolean[0];
+	private Switchable[] targets = new Switchable[0];
+	private int[] factors = new int[0];
+	private int[] otherwise = new int[0];
+	private int count;
+	private int live;
+	/**
+	 * удаленные правила, условия которых еще в индексах, и свободные номера
+	 */
+	private int[] removed = new int[16];
+	private int removedCount;
+	private int[] free = new int[16];
+	private int freeCount;
+
+	/**
+	 * очередь правил, сменивших состояние
+	 */
+	private int[] pending = new int[64];
+	private int pendingCount;
+	private final Runnable onPending;
+	private long actions;
+
+	// действия очереди, выполняемые вне блокировки правил
+	private final Object draining = new Object();
+	private Switchable[] drainTargets = new Switchable[64];
+	private int[] drainFactors = new int[64];
+
+	/**
+	 * @param onPending - вызывается, когда правило ставится в пустую очередь (например, для планирования шага
+	 *                  контроллера), может быть null
+	 */
+	public RuleEngine(Runnable onPending) {
+		this.onPending = onPending;
+		for (int c = 0; c < CONDITIONS.length; c++) {
+			above[c] = new Index(true);
+			below[c] = new Index(false);
+		}
+		Arrays.fill(values, Double.NaN);
+	}
+
+	/**
+	 * Добавление правила. Условия сразу оцениваются по последним значениям - правило, выполненное при добавлении,
+	 * ставится в очередь на действие
+	 * @return номер правила для удаления
+	 * @throws IllegalArgumentException - если у правила нет условий или действия
+	 */
+	public int add(Rule rule) {
+		if (rule.size() == 0) throw new IllegalArgumentException("rule without conditions");
+		if (rule.target == null) throw new IllegalArgumentException("rule without action");
+		int id;
+		boolean notify;
+		synchronized (this) {
+			id = allocate();
+			required[id] = rule.size();
+			satisfied[id] = 0;
+			acted[id] = false;
+			targets[id] = rule.target;
+			factors[id] = rule.factor;
+			otherwise[id] = rule.otherwise;
+			for (int i = 0; i < rule.conditions.size(); i++) {
+				int c = rule.conditions.get(i).ordinal();
+				double threshold = rule.thresholds.get(i);
+				Index index = rule.above.get(i) ? above[c] : below[c];
+				index.added.add(new double[] {threshold, id});
+				merged = false;
+				if (index.holds(threshold, values[c])) satisfied[id]++;
+			}
+			for (int i = 0; i < rule.devices.size(); i++) {
+				boolean expected = rule.online.get(i);
+				DeviceIndex index = states.computeIfAbsent(rule.devices.get(i), device -> new DeviceIndex(device.isOnline()));
+				index.add(id, expected);
+				if (index.online == expected) satisfied[id]++;
+			}
+			live++;
+			notify = satisfied[id] == required[id] && enqueue(id);
+		}
+		if (notify && onPending != null) onPending.run();
+		return id;
+	}
+
+	/**
+	 * Удаление правила - его действия больше не выполняются
+	 */
+	public synchronized void remove(int id) {
+		if (id < 0 || id >= count || required[id] == FREE) return;
+		required[id] = FREE;
+		targets[id] = null;
+		live--;
+		if (removedCount == removed.length) removed = Arrays.copyOf(removed, removedCount * 2);
+		removed[removedCount++] = id;
+		if (removedCount > live) merged = false;
+	}
+
+	/**
+	 * @return число действующих правил
+	 */
+	public synchronized int size() {
+		return live;
+	}
+
+	/**
+	 * @return число выполненных действий
+	 */
+	public synchronized long getActions() {
+		return actions;
+	}
+
+	private int allocate() {
+		if (freeCount > 0) return free[--freeCount];
+		if (count == required.length) {
+			int size = Math.max(16, count * 2);
+			required = Arrays.copyOf(required, size);
+			satisfied = Arrays.copyOf(satisfied, size);
+			acted = Arrays.copyOf(acted, size);
+			queued = Arrays.copyOf(queued, size);
+			targets = Arrays.copyOf(targets, size);
+			factors = Arrays.copyOf(factors, size);
+			otherwise = Arrays.copyOf(otherwise, size);
+		}
+		return count++;
+	}
+
+	/**
+	 * Изменение значения параметра климата (например, объединенного значения измерителей контроллера).
+	 * Прежнее значение берется из последнего изменения, а не из уведомления
+	 */
+	@Override
+	public void valueChanged(Measurable condition, double oldValue, double newValue) {
+		update(condition.getEnvCondition(), newValue);
+	}
+
+	/**
+	 * Новое значение параметра климата: пересчет условий, сменивших истинность
+	 */
+	public void update(EnvCondition condition, double value) {
+		if (Double.isNaN(value)) return;
+		boolean notify;
+		synchronized (this) {
+			int c = condition.ordinal();
+			double previous = values[c];
+			if (previous == value) return;
+			merge();
+			values[c] = value;
+			int before = pendingCount;
+			flip(above[c], previous, value);
+			flip(below[c], previous, value);
+			notify = before == 0 && pendingCount > 0;
+		}
+		if (notify && onPending != null) onPending.run();
+	}
+
+	/**
+	 * Условия индекса, сменившие истинность при изменении значения, - отрезок между границами прежнего и нового
+	 * значения: для "больше" условия отрезка становятся истинными при росте границы, для "меньше" - при убывании
+	 */
+	private void flip(Index index, double previous, double value) {
+		if (index.size == 0) return;
+		int from = index.bound(previous), to = index.bound(value);
+		if (from == to) return;
+		int delta = (to > from) == index.above ? 1 : -1;
+		int[] rules = index.rules;
+		for (int i = Math.min(from, to), end = Math.max(from, to); i < end; i++) {
+			satisfy(rules[i], delta);
+		}
+	}
+
+	/**
+	 * Изменение состояния устройства (вызывается реестром устройств контроллера после переключения)
+	 */
+	public void deviceChanged(Switchable device) {
+		boolean notify;
+		synchronized (this) {
+			DeviceIndex index = states.get(device);
+			if (index == null) return;
+			boolean online = device.isOnline();
+			if (index.online == online) return;
+			index.online = online;
+			int before = pendingCount;
+			for (int i = 0; i < index.size; i++) {
+				satisfy(index.rules[i], index.expected[i] == online ? 1 : -1);
+			}
+			notify = before == 0 && pendingCount > 0;
+		}
+		if (notify && onPending != null) onPending.run();
+	}
+
+	private void satisfy(int rule, int delta) {
+		int required = this.required[rule];
+		if (required == FREE) return;
+		boolean was = satisfied[rule] == required;
+		satisfied[rule] += delta;
+		if (was != (satisfied[rule] == required)) enqueue(rule);
+	}
+
+	/**
+	 * @return true - если очередь была пуста
+	 */
+	private boolean enqueue(int rule) {
+		if (queued[rule]) return false;
+		queued[rule] = true;
+		if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+		pending[pendingCount++] = rule;
+		return pendingCount == 1;
+	}
+
+	/**
+	 * Вливание добавленных условий в индексы и удаление условий удаленных правил (когда их больше действующих)
+	 */
+	private void merge() {
+		if (merged) return;
+		merged = true;
+		boolean purge = removedCount > live;
+		for (int c = 0; c < CONDITIONS.length; c++) {
+			merge(above[c], purge);
+			merge(below[c], purge);
+		}
+		if (!purge) return;
+		for (DeviceIndex index : states.values()) {
+			int size = 0;
+			for (int i = 0; i < index.size; i++) {
+				if (required[index.rules[i]] == FREE) continue;
+				index.rules[size] = index.rules[i];
+				index.expected[size++] = index.expected[i];
+			}
+			index.size = size;
+		}
+		states.values().removeIf(index -> index.size == 0);
+		for (int i = 0; i < removedCount; i++) {
+			if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+			free[freeCount++] = removed[i];
+		}
+		removedCount = 0;
+	}
+
+	/**
+	 * Слияние упорядоченных добавленных условий с индексом (условия удаленных правил при purge пропускаются)
+	 */
+	private void merge(Index index, boolean purge) {
+		if (index.added.isEmpty() && !purge) return;
+		index.added.sort((a, b) -> Double.compare(a[0], b[0]));
+		int added = index.added.size();
+		double[] thresholds = new double[index.size + added];
+		int[] rules = new int[index.size + added];
+		int size = 0, i = 0, j = 0;
+		while (i < index.size || j < added) {
+			double[] next = j < added ? index.added.get(j) : null;
+			if (next == null || (i < index.size && index.thresholds[i] <= next[0])) {
+				if (!purge || required[index.rules[i]] != FREE) {
+					thresholds[size] = index.thresholds[i];
+					rules[size++] = index.rules[i];
+				}
+				i++;
+			} else {
+				if (required[(int) next[1]] != FREE) {
+					thresholds[size] = next[0];
+					rules[size++] = (int) next[1];
+				}
+				j++;
+			}
+		}
+		index.added.clear();
+		index.thresholds = size == thresholds.length ? thresholds : Arrays.copyOf(thresholds, size);
+		index.rules = size == rules.length ? rules : Arrays.copyOf(rules, size);
+		index.size = size;
+	}
+
+	/**
+	 * Выполнение действий правил, сменивших состояние с последнего действия. Действия выполняются вне блокировки
+	 * правил, поэтому могут переключать устройства через реестр, уведомляющий {@link #deviceChanged}
+	 * @param actuator - действие над устройством с мощностью, %, или {@link #OFF}
+	 * @return число выполненных действий
+	 */
+	public int drain(ObjIntConsumer<Switchable> actuator) {
+		synchronized (draining) {
+			int size = 0;
+			synchronized (this) {
+				for (int i = 0; i < pendingCount; i++) {
+					int rule = pending[i];
+					queued[rule] = false;
+					if (required[rule] == FREE) continue;
+					boolean holds = satisfied[rule] == required[rule];
+					if (holds == acted[rule]) continue;
+					acted[rule] = holds;
+					int factor = holds ? factors[rule] : otherwise[rule];
+					if (factor == NO_ACTION) continue;
+					if (size == drainTargets.length) {
+						drainTargets = Arrays.copyOf(drainTargets, size * 2);
+						drainFactors = Arrays.copyOf(drainFactors, size * 2);
+					}
+					drainTargets[size] = targets[rule];
+					drainFactors[size++] = factor;
+				}
+				pendingCount = 0;
+				actions += size;
+			}
+			for (int i = 0; i < size; i++) {
+				actuator.accept(drainTargets[i], drainFactors[i]);
+				drainTargets[i] = null;
+			}
+			return size;
+		}
+	}
+}
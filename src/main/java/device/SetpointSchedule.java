@@ -0,0 +1,99 @@
+package device;
+
+import env.ConditionHistory;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Суточное расписание уставки параметра климата, например "18°C с 22:00, 22°C с 7:00". Расписание - переходы
+ * по времени суток: с момента перехода и до следующего действует его значение, после последнего перехода
+ * суток - до первого перехода следующих. Время суток отсчитывается от полуночи по времени часов со смещением
+ * часового пояса (виртуальные часы, начатые с 0, - полночь первых суток).
+ *
+ * Расписание задается контроллеру {@link Controller#setSchedule} и исполняется колесом таймеров среды
+ * исполнения: на каждое расписание контроллера в колесе находится один таймер - до ближайшего перехода.
+ * Расписание, переданное контроллеру, не изменяется - для изменения задается новое
+ */
+public class SetpointSchedule {
+	public static final long DAY = 24 * ConditionHistory.HOUR;
+
+	private final long zoneOffset;
+	private long[] times = new long[0];
+	private double[] values = new double[0];
+
+	public SetpointSchedule() {
+		this(0);
+	}
+
+	/**
+	 * @param zoneOffset - смещение часового пояса относительно времени часов, мс
+	 *                   (например, {@code TimeZone.getDefault().getOffset(System.currentTimeMillis())})
+	 */
+	public SetpointSchedule(long zoneOffset) {
+		this.zoneOffset = zoneOffset;
+	}
+
+	/**
+	 * Переход к значению в заданное время суток (переход в то же время заменяется)
+	 */
+	public SetpointSchedule at(int hour, int minute, double value) {
+		if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+			throw new IllegalArgumentException(String.format("invalid time of day %d:%02d", hour, minute));
+		}
+		long time = hour * ConditionHistory.HOUR + minute * ConditionHistory.MINUTE;
+		int index = Arrays.binarySearch(times, time);
+		if (index >= 0) {
+			values[index] = value;
+			return this;
+		}
+		index = -index - 1;
+		long[] newTimes = new long[times.length + 1];
+		double[] newValues = new double[values.length + 1];
+		System.arraycopy(times, 0, newTimes, 0, index);
+		System.arraycopy(values, 0, newValues, 0, index);
+		newTimes[index] = time;
+		newValues[index] = value;
+		System.arraycopy(times, index, newTimes, index + 1, times.length - index);
+		System.arraycopy(values, index, newValues, index + 1, values.length - index);
+		times = newTimes;
+		values = newValues;
+		return this;
+	}
+
+	/**
+	 * @return число переходов в сутки
+	 */
+	public int size() {
+		return times.length;
+	}
+
+	/**
+	 * Значение, действующее в момент времени часов
+	 * @throws IllegalStateException - если в расписании нет переходов
+	 */
+	public double valueAt(long time) {
+		if (times.length == 0) throw new IllegalStateException("empty schedule");
+		int index = Arrays.binarySearch(times, timeOfDay(time));
+		if (index < 0) index = -index - 2;
+		return values[index < 0 ? values.length - 1 : index];
+	}
+
+	/**
+	 * Время часов ближайшего перехода после момента времени
+	 * @throws IllegalStateException - если в расписании нет переходов
+	 */
+	public long nextTransition(long time) {
+		if (times.length == 0) throw new IllegalStateException("empty schedule");
+		long timeOfDay = timeOfDay(time);
+		int index = Arrays.binarySearch(times, timeOfDay);
+		index = index < 0 ? -index - 1 : index + 1;
+		long next = index < times.length ? times[index] : times[0] + DAY;
+		return time - timeOfDay + next;
+	}
+
+	private long timeOfDay(long time) {
+		return Math.floorMod(time + zoneOffset, DAY);
+	}
+}
@@ -0,0 +1,30 @@
+package device.filter;
+
+
+
+/**
+ * Экспоненциальное скользящее среднее: value += alpha * (sample - value). Первое показание принимается как есть
+ */
+public class ExponentialFilter implements SensorFilter {
+	private final double alpha;
+	private double value = Double.NaN;
+
+	/**
+	 * @param alpha - вес нового показания, от 0 (не меняется) до 1 (без фильтрации)
+	 */
+	public ExponentialFilter(double alpha) {
+		if (!(alpha > 0 && alpha <= 1)) throw new IllegalArgumentException("alpha must be in (0, 1] - " + alpha);
+		this.alpha = alpha;
+	}
+
+	@Override
+	public double update(double sample) {
+		value = Double.isNaN(value) ? sample : value + alpha * (sample - value);
+		return value;
+	}
+
+	@Override
+	public double getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,135 @@
+package device.filter;
+
+import env.ConditionListener;
+import env.Measurable;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+
+
+/**
+ * Объединенное значение параметра климата по всем его измерителям: каждое показание измерителя проходит
+ * через собственный фильтр источника, а среднее отфильтрованных значений поддерживается суммой, которая
+ * поправляется на изменение значения фильтра. Значение хранится готовым - чтение не требует обхода измерителей.
+ * Фильтры без числового значения (еще нет показаний или принято NaN) в среднее не входят: при переходе
+ * значения фильтра в нечисловое или обратно сумма пересчитывается по всем фильтрам, поэтому одно
+ * ошибочное показание не делает объединенное значение неизвестным.
+ *
+ * Несколько измерителей одного и того же параметра среды являются одним источником. Об изменении
+ * объединенного значения уведомляется получатель (например, наблюдатель порогов контроллера)
+ */
+public class FusedCondition implements ConditionListener {
+	/**
+	 * через сколько обновлений сумма пересчитывается заново (накопленная ошибка округления)
+	 */
+	private static final int RESUM_PERIOD = 1 << 16;
+
+	private final Map<Measurable, SensorFilter> sources = new IdentityHashMap<>();
+	private final ConditionListener listener;
+	private Supplier<? extends SensorFilter> filters;
+	private double sum;
+	/**
+	 * число фильтров с числовым значением, входящих в сумму
+	 */
+	private int finite;
+	private int updates;
+	private volatile double value = Double.NaN;
+
+	/**
+	 * @param filters - фильтр для нового источника
+	 * @param listener - получатель изменений объединенного значения, может быть null
+	 */
+	public FusedCondition(Supplier<? extends SensorFilter> filters, ConditionListener listener) {
+		this.filters = filters;
+		this.listener = listener;
+	}
+
+	/**
+	 * Добавление источника. Фильтр источника начинается с его текущего значения
+	 */
+	public void add(Measurable source) {
+		add(source, true);
+	}
+
+	/**
+	 * @param subscribe - false: показания источника передаются вызовом {@link #valueChanged} (например,
+	 *                  читателем буфера показаний), а не подпиской на источник
+	 */
+	public void add(Measurable source, boolean subscribe) {
+		synchronized (this) {
+			if (sources.containsKey(source)) return;
+			SensorFilter filter = filters.get();
+			filter.update(source.getValue());
+			sources.put(source, filter);
+			resum();
+		}
+		if (subscribe) source.addListener(this);
+	}
+
+	public void remove(Measurable source) {
+		source.removeListener(this);
+		synchronized (this) {
+			if (sources.remove(source) != null) resum();
+		}
+	}
+
+	/**
+	 * Замена фильтров всех источников - новые фильтры начинаются с текущих значений источников
+	 */
+	public synchronized void setFilters(Supplier<? extends SensorFilter> filters) {
+		this.filters = filters;
+		for (Map.Entry<Measurable, SensorFilter> entry : sources.entrySet()) {
+			SensorFilter filter = filters.get();
+			filter.update(entry.getKey().getValue());
+			entry.setValue(filter);
+		}
+		resum();
+	}
+
+	/**
+	 * @return объединенное значение, NaN - нет источников с числовым значением
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	public synchronized int size() {
+		return sources.size();
+	}
+
+	@Override
+	public void valueChanged(Measurable condition, double oldValue, double newValue) {
+		double previous, current;
+		synchronized (this) {
+			SensorFilter filter = sources.get(condition);
+			if (filter == null) return;
+			double before = filter.getValue();
+			double after = filter.update(newValue);
+			if (Double.isFinite(before) && Double.isFinite(after)) {
+				sum += after - before;
+				if (++updates == RESUM_PERIOD) resum();
+			} else {
+				resum();
+			}
+			previous = value;
+			current = finite == 0 ? Double.NaN : sum / finite;
+			value = current;
+		}
+		if (listener != null && current != previous) listener.valueChanged(condition, previous, current);
+	}
+
+	private void resum() {
+		updates = 0;
+		sum = 0;
+		finite = 0;
+		for (SensorFilter filter : sources.values()) {
+			double filtered = filter.getValue();
+			if (!Double.isFinite(filtered)) continue;
+			sum += filtered;
+			finite++;
+		}
+		value = finite == 0 ? Double.NaN : sum / finite;
+	}
+}
@@ -0,0 +1,46 @@
+package device.filter;
+
+
+
+/**
+ * Одномерный фильтр Калмана для медленно меняющейся величины (модель случайного блуждания):
+ * дисперсия оценки растет на шум процесса с каждым показанием, а коэффициент усиления определяет,
+ * насколько оценка сдвигается к показанию с учетом шума измерения
+ */
+public class KalmanFilter implements SensorFilter {
+	private final double processNoise;
+	private final double measurementNoise;
+	private double value = Double.NaN;
+	private double variance;
+
+	/**
+	 * @param processNoise - дисперсия изменения величины за период между показаниями
+	 * @param measurementNoise - дисперсия ошибки показания
+	 */
+	public KalmanFilter(double processNoise, double measurementNoise) {
+		if (processNoise < 0 || measurementNoise <= 0) {
+			throw new IllegalArgumentException("noise must be positive - " + processNoise + ", " + measurementNoise);
+		}
+		this.processNoise = processNoise;
+		this.measurementNoise = measurementNoise;
+	}
+
+	@Override
+	public double update(double sample) {
+		if (Double.isNaN(value)) {
+			value = sample;
+			variance = measurementNoise;
+			return value;
+		}
+		variance += processNoise;
+		double gain = variance / (variance + measurementNoise);
+		value += gain * (sample - value);
+		variance *= 1 - gain;
+		return value;
+	}
+
+	@Override
+	public double getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,74 @@
+package device.filter;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Медиана последних N показаний - устойчива к единичным выбросам. Показания хранятся в кольцевом буфере
+ * и в упорядоченном окне: новое показание занимает место самого старого, и сдвигаются только показания
+ * между ними (для плавно меняющегося параметра - единицы элементов), без сортировки и создания объектов.
+ * Точная скользящая медиана требует порядка log N сравнений на показание, поэтому стоимость обновления
+ * ограничивается размером окна - не более {@link #MAX_SIZE} показаний
+ */
+public class MedianFilter implements SensorFilter {
+	public static final int MAX_SIZE = 64;
+
+	private final double[] window;
+	private final double[] sorted;
+	private int count;
+	private int head;
+
+	/**
+	 * @param size - число показаний в окне, от 1 до {@link #MAX_SIZE}
+	 */
+	public MedianFilter(int size) {
+		if (size < 1 || size > MAX_SIZE) {
+			throw new IllegalArgumentException("window size must be in 1.." + MAX_SIZE + " - " + size);
+		}
+		window = new double[size];
+		sorted = new double[size];
+	}
+
+	@Override
+	public double update(double sample) {
+		if (count == window.length) replace(Arrays.binarySearch(sorted, 0, count, window[head]), sample);
+		else insert(sample);
+		window[head] = sample;
+		head = (head + 1) % window.length;
+		return getValue();
+	}
+
+	/**
+	 * Замена показания окна с индексом index новым со сдвигом показаний между ними
+	 */
+	private void replace(int index, double sample) {
+		if (sample >= sorted[index]) {
+			while (index + 1 < count && sorted[index + 1] < sample) {
+				sorted[index] = sorted[index + 1];
+				index++;
+			}
+		} else {
+			while (index > 0 && sorted[index - 1] > sample) {
+				sorted[index] = sorted[index - 1];
+				index--;
+			}
+		}
+		sorted[index] = sample;
+	}
+
+	private void insert(double sample) {
+		int position = Arrays.binarySearch(sorted, 0, count, sample);
+		if (position < 0) position = -position - 1;
+		System.arraycopy(sorted, position, sorted, position + 1, count - position);
+		sorted[position] = sample;
+		count++;
+	}
+
+	@Override
+	public double getValue() {
+		if (count == 0) return Double.NaN;
+		int middle = count / 2;
+		return count % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+	}
+}
@@ -0,0 +1,20 @@
+package device.filter;
+
+
+
+/**
+ * Фильтр показаний измерителя. Показания учитываются по одному, обновление фильтра не зависит
+ * от числа учтенных показаний и не создает объектов
+ */
+public interface SensorFilter {
+	/**
+	 * Учет нового показания
+	 * @return отфильтрованное значение
+	 */
+	double update(double sample);
+
+	/**
+	 * @return отфильтрованное значение, NaN - показаний еще не было
+	 */
+	double getValue();
+}
@@ -44,6 +44,6 @@ public class HumiditySensor extends MeasuringDevice {
 
 	@Override
 	public void showStatus() {
-		showMsg(getMeasures());
+		showMeasures();
 	}
 }
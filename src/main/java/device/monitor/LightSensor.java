@@ -43,6 +43,6 @@ public class LightSensor extends MeasuringDevice {
 
 	@Override
 	public void showStatus() {
-		showMsg(getMeasures());
+		showMeasures();
 	}
 }
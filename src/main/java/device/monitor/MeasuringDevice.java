@@ -2,6 +2,9 @@ package device.monitor;
 
 import device.ElectronicDevice;
 import device.Measurer;
+import device.Periodic;
+import device.ReadingRing;
+import env.ConditionListener;
 import env.Measurable;
 import env.Environment;
 
@@ -15,12 +18,30 @@ import env.Environment;
  * существовать лишь как прототип для других реализаций классов (устройств), с конкретными
  * специфичными данными. Конкретные типы измерительных устройств наследуются от этого класса
  */
-abstract public class MeasuringDevice extends ElectronicDevice implements Measurer, Runnable {
+abstract public class MeasuringDevice extends ElectronicDevice implements Measurer, Periodic, Runnable {
 	protected Measurable measured;
 	Environment measuredEnv;
 	protected boolean isOnline;
 	final protected String MEASURED_CONDITION;
 	static int ID = 0;
+	/**
+	 * период сообщения о состоянии, мс
+	 */
+	public static final long STATUS_PERIOD = 5000;
+	private static final String MEASURES_FORMAT = "%s %5.2f%s";
+	/**
+	 * периодические сообщения измерителей о состоянии (например, отключаются, если показания
+	 * отдаются сервером {@link metrics.TelemetryServer})
+	 */
+	private static volatile boolean reporting = true;
+	/**
+	 * буфер, в который публикуются показания (null - показания не публикуются)
+	 */
+	private volatile ReadingRing pipeline;
+	private final ConditionListener publisher = (condition, oldValue, newValue) -> {
+		ReadingRing ring = pipeline;
+		if (ring != null) ring.publish(condition, newValue);
+	};
 
 	protected MeasuringDevice(int startID, String description, int power, Environment env, String conditionName) {
 		super(description, power, startID);
@@ -42,22 +63,64 @@ abstract public class MeasuringDevice extends ElectronicDevice implements Measur
 	}
 
 	protected void measure() {
+		if (measured != null) measured.removeListener(publisher);
 		measured = measuredEnv.getCondition(MEASURED_CONDITION);
+		if (pipeline != null) measured.addListener(publisher);
+	}
+
+	/**
+	 * Каждое изменение измеряемого параметра публикуется в буфер в потоке, изменившем параметр
+	 */
+	@Override
+	public boolean publishTo(ReadingRing ring) {
+		pipeline = ring;
+		if (measured != null) {
+			if (ring != null) measured.addListener(publisher);
+			else measured.removeListener(publisher);
+		}
+		return true;
+	}
+
+	/**
+	 * Включение и отключение периодических сообщений всех измерителей о состоянии
+	 */
+	public static void setReporting(boolean reporting) {
+		MeasuringDevice.reporting = reporting;
 	}
 
 	public String getMeasures() {
-		return String.format("%s %5.2f%s", measured.getName(), measured.getValue(), measured.getUnit());
+		return String.format(MEASURES_FORMAT, measured.getName(), measured.getValue(), measured.getUnit());
+	}
+
+	/**
+	 * Сообщение об измеренных данных без форматирования в вызывающем потоке
+	 */
+	protected void showMeasures() {
+		showMsg(MEASURES_FORMAT, measured.getName(), measured.getValue(), measured.getUnit());
+	}
+
+	@Override
+	public long getPeriod() {
+		return STATUS_PERIOD;
 	}
 
 	/**
 	 * жизненный цикл работы Измерителя - сообщать о своем состоянии (измеренных данных)
 	 */
 	@Override
+	public void tick() {
+		if (reporting) showStatus();
+	}
+
+	/**
+	 * Жизненный цикл в отдельном потоке. Контроллер исполняет измерители общим планировщиком {@link device.DeviceRuntime}
+	 */
+	@Override
 	public void run() {
 		while (true) {
-			showStatus();
+			tick();
 			try {
-				Thread.sleep(5000);
+				Thread.sleep(STATUS_PERIOD);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
@@ -0,0 +1,66 @@
+package device.monitor;
+
+import env.Condition;
+import env.EnvCondition;
+import env.Measurable;
+
+
+
+/**
+ * Удаленный измеритель: показания не читаются из среды, а принимаются по сети шлюзом {@link SensorGateway}.
+ * Для контроллера это обычный измеритель - его параметр {@link Condition} уведомляет подписчиков
+ * о каждом принятом показании
+ */
+public class RemoteSensor extends MeasuringDevice {
+	private final Condition condition;
+
+	/**
+	 * @param initial - значение до первого принятого показания
+	 */
+	public RemoteSensor(String description, int power, EnvCondition measured, double initial) {
+		super(1, description, power, null, measured.getName());
+		condition = new Condition(measured, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		condition.setValue(initial);
+		this.measured = condition;
+	}
+
+	/**
+	 * Принятое показание
+	 */
+	void update(double value) {
+		condition.setValue(value);
+	}
+
+	@Override
+	protected void measure() {
+	}
+
+	public void powerOn() {
+		super.powerOn();
+		showMsg("powered on");
+	}
+
+	public void powerOff() {
+		super.powerOff();
+		showMsg("powered off");
+	}
+
+	public boolean isOnline() {
+		return isOnline;
+	}
+
+	@Override
+	public String getMeasuredCharacterictic() {
+		return MEASURED_CONDITION;
+	}
+
+	@Override
+	public Measurable getMeasured() {
+		return measured;
+	}
+
+	@Override
+	public void showStatus() {
+		showMeasures();
+	}
+}
@@ -0,0 +1,183 @@
+package device.monitor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+
+
+/**
+ * Шлюз приема показаний удаленных измерителей {@link RemoteSensor} по TCP. Протокол - поток кадров
+ * постоянной длины {@link #FRAME} байт без заголовков и ответов (порядок байтов - big-endian):
+ * - int - номер измерителя, выданный {@link #register}
+ * - double - показание
+ * Кадры с неизвестным номером или нечисловым показанием (NaN, бесконечность) отбрасываются и учитываются
+ * в {@link #getRejected()}.
+ *
+ * Шлюз работает в одном потоке на неблокирующих каналах с селектором. Каждое соединение читается в собственный
+ * прямой буфер, кадры разбираются прямо из буфера и передаются параметру измерителя - на показание не
+ * создается ни одного объекта. Неполный кадр в конце чтения остается в буфере до следующего чтения.
+ */
+public class SensorGateway implements AutoCloseable {
+	/**
+	 * длина кадра, байт
+	 */
+	public static final int FRAME = Integer.BYTES + Double.BYTES;
+	private static final int BUFFER = 64 * 1024;
+
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final Thread thread;
+	/**
+	 * Измерители по номеру. Массив заменяется целиком при регистрации (copy-on-write)
+	 */
+	private volatile RemoteSensor[] sensors = new RemoteSensor[0];
+	private volatile long readings;
+	private volatile long rejected;
+	private volatile boolean running = true;
+
+	/**
+	 * @param address - адрес шлюза (например, 127.0.0.1 - только локальные измерители)
+	 */
+	public SensorGateway(InetSocketAddress address) throws IOException {
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(address, 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this::serve, "sensor-gateway");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) server.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * @return номер измерителя в кадрах протокола
+	 */
+	public synchronized int register(RemoteSensor sensor) {
+		RemoteSensor[] copy = Arrays.copyOf(sensors, sensors.length + 1);
+		copy[sensors.length] = sensor;
+		sensors = copy;
+		return sensors.length - 1;
+	}
+
+	/**
+	 * @return число принятых показаний
+	 */
+	public long getReadings() {
+		return readings;
+	}
+
+	/**
+	 * @return число отброшенных кадров (неизвестный номер измерителя или нечисловое показание)
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Поток шлюза (например, для учета процессорного времени)
+	 */
+	public Thread getThread() {
+		return thread;
+	}
+
+	private void serve() {
+		while (running) {
+			try {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) accept();
+					else if (key.isReadable()) read(key);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for (SelectionKey key : selector.keys()) {
+			close(key);
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(BUFFER));
+		}
+	}
+
+	private void read(SelectionKey key) {
+		SocketChannel channel = (SocketChannel) key.channel();
+		ByteBuffer buffer = (ByteBuffer) key.attachment();
+		int read;
+		try {
+			read = channel.read(buffer);
+		} catch (IOException e) {
+			read = -1;
+		}
+		buffer.flip();
+		decode(buffer);
+		buffer.compact();
+		if (read < 0) close(key);
+	}
+
+	/**
+	 * Разбор полных кадров буфера (счетчики пишет только поток шлюза - одна запись на чтение)
+	 */
+	private void decode(ByteBuffer buffer) {
+		RemoteSensor[] sensors = this.sensors;
+		long accepted = 0, invalid = 0;
+		while (buffer.remaining() >= FRAME) {
+			int sensor = buffer.getInt();
+			double value = buffer.getDouble();
+			if (sensor >= 0 && sensor < sensors.length && Double.isFinite(value)) {
+				sensors[sensor].update(value);
+				accepted++;
+			} else {
+				invalid++;
+			}
+		}
+		if (accepted > 0) readings += accepted;
+		if (invalid > 0) rejected += invalid;
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		server.close();
+	}
+}
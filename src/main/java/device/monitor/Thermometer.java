@@ -45,6 +45,6 @@ public class Thermometer extends MeasuringDevice {
 
 	@Override
 	public void showStatus() {
-		showMsg(getMeasures());
+		showMeasures();
 	}
 }
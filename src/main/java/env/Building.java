@@ -0,0 +1,308 @@
+package env;
+
+import device.Influencer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+
+/**
+ * Здание - среда из множества комнат, связанных теплообменом. Комнаты - вершины графа, стены и перекрытия -
+ * ребра с коэффициентом теплопередачи: доля разности температур соседних комнат, на которую температура
+ * комнаты меняется за шаг (как {@code 1/200} для внешней температуры в шаге комнаты).
+ *
+ * Комнаты хранятся в общем хранилище {@link ConditionStore} и доступны по номеру как отдельные среды
+ * {@link Room} для своих устройств и контроллеров. Шаг здания выполняет шаг всех комнат (шаг самих комнат
+ * выполнять не следует). Граф хранится в сжатом строчном формате (CSR), и теплообмен шага - произведение
+ * разреженной матрицы на вектор температур до шага:
+ *   exchange[i] = sum(k[i][j] * t[j]) - sum(k[i][j]) * t[i]
+ * Шаг выполняется в пуле fork/join в два этапа по диапазонам номеров комнат: снимок температур, затем
+ * для каждого диапазона - теплообмен его комнат и шаг хранилища. Комнаты рекомендуется нумеровать
+ * по этажам и секциям, тогда диапазоны - части графа с небольшим числом связей между ними.
+ *
+ * Параметры климата самого здания - средние по комнатам, обновляются после каждого шага с уведомлением
+ * подписчиков. Устройства влияния здания (например, центральные) воздействуют на каждую комнату.
+ */
+public class Building implements Environment, Runnable {
+	private static final int T = EnvCondition.TEMPERATURE.ordinal();
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+	/**
+	 * наибольшая сумма коэффициентов теплопередачи комнаты (явная схема шага остается устойчивой)
+	 */
+	public static final double MAX_CONDUCTANCE = 0.5;
+	/**
+	 * комнат в задаче fork/join, не разделяемой дальше
+	 */
+	private static final int PARTITION = 2048;
+
+	private final ConditionStore store;
+	private final Room[] rooms;
+	private final Clock clock;
+	private final ForkJoinPool pool;
+	private final Map<String, Condition> conditions = new HashMap<>(4);
+
+	/**
+	 * ребра графа в порядке добавления и сумма коэффициентов каждой комнаты
+	 */
+	private int[] edgeFrom = new int[16];
+	private int[] edgeTo = new int[16];
+	private double[] edgeCoefficient = new double[16];
+	private int edges;
+	private final double[] conductance;
+	/**
+	 * граф в формате CSR, перестраивается при первом шаге после добавления ребер
+	 */
+	private volatile Graph graph;
+
+	// состояние шага
+	private final double[] temperature;
+	private final double[] exchange;
+	private final double[] column;
+
+	/**
+	 * Матрица теплопередачи в сжатом строчном формате: ребра строки i - [rowStart[i], rowStart[i + 1])
+	 */
+	private static final class Graph {
+		final int[] rowStart;
+		final int[] neighbor;
+		final double[] coefficient;
+		final double[] diagonal;
+
+		Graph(int[] rowStart, int[] neighbor, double[] coefficient, double[] diagonal) {
+			this.rowStart = rowStart;
+			this.neighbor = neighbor;
+			this.coefficient = coefficient;
+			this.diagonal = diagonal;
+		}
+	}
+
+	/**
+	 * @param clock - часы среды
+	 * @param roomCount - число комнат
+	 * @param seed - начальное значение генератора (одинаковое значение дает одинаковую модель)
+	 * @param pool - пул для параллельного шага
+	 */
+	public Building(Clock clock, int roomCount, long seed, ForkJoinPool pool) {
+		this.clock = clock;
+		this.pool = pool;
+		store = new ConditionStore(roomCount);
+		rooms = new Room[roomCount];
+		Random rand = new Random(seed);
+		for (int i = 0; i < roomCount; i++) {
+			rooms[i] = new Room(store, clock, rand.nextLong());
+		}
+		conductance = new double[roomCount];
+		temperature = new double[roomCount];
+		exchange = new double[roomCount];
+		column = new double[roomCount];
+		for (EnvCondition condition : CONDITIONS) {
+			conditions.put(condition.getName(), new Condition(condition, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+		}
+		setOutSideTemp(rand.nextInt(35) * (rand.nextBoolean() ? 1 : -1));
+	}
+
+	public Building(Clock clock, int roomCount, long seed) {
+		this(clock, roomCount, seed, ForkJoinPool.commonPool());
+	}
+
+	public int size() {
+		return rooms.length;
+	}
+
+	/**
+	 * Комната здания - среда для ее устройств и контроллера
+	 */
+	public Room getRoom(int index) {
+		return rooms[index];
+	}
+
+	/**
+	 * Связь двух комнат теплообменом (стена, перекрытие)
+	 * @param coefficient - доля разности температур за шаг
+	 * @throws IllegalArgumentException - если сумма коэффициентов комнаты превысит {@link #MAX_CONDUCTANCE}
+	 */
+	public synchronized void connect(int room, int other, double coefficient) {
+		if (room == other || coefficient <= 0) throw new IllegalArgumentException("invalid connection " + room + " - " + other);
+		if (conductance[room] + coefficient > MAX_CONDUCTANCE || conductance[other] + coefficient > MAX_CONDUCTANCE) {
+			throw new IllegalArgumentException("conductance of room exceeds " + MAX_CONDUCTANCE);
+		}
+		if (edges == edgeFrom.length) {
+			edgeFrom = Arrays.copyOf(edgeFrom, edges * 2);
+			edgeTo = Arrays.copyOf(edgeTo, edges * 2);
+			edgeCoefficient = Arrays.copyOf(edgeCoefficient, edges * 2);
+		}
+		edgeFrom[edges] = room;
+		edgeTo[edges] = other;
+		edgeCoefficient[edges++] = coefficient;
+		conductance[room] += coefficient;
+		conductance[other] += coefficient;
+		graph = null;
+	}
+
+	/**
+	 * Граф в формате CSR: каждое ребро дает два элемента матрицы, строки упорядочены подсчетом
+	 */
+	private synchronized Graph graph() {
+		if (graph != null) return graph;
+		int n = rooms.length;
+		int[] rowStart = new int[n + 1];
+		for (int e = 0; e < edges; e++) {
+			rowStart[edgeFrom[e] + 1]++;
+			rowStart[edgeTo[e] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			rowStart[i + 1] += rowStart[i];
+		}
+		int[] fill = Arrays.copyOf(rowStart, n);
+		int[] neighbor = new int[edges * 2];
+		double[] coefficient = new double[edges * 2];
+		for (int e = 0; e < edges; e++) {
+			int a = edgeFrom[e], b = edgeTo[e];
+			neighbor[fill[a]] = b;
+			coefficient[fill[a]++] = edgeCoefficient[e];
+			neighbor[fill[b]] = a;
+			coefficient[fill[b]++] = edgeCoefficient[e];
+		}
+		graph = new Graph(rowStart, neighbor, coefficient, Arrays.copyOf(conductance, n));
+		return graph;
+	}
+
+	@Override
+	public Measurable getCondition(String conditionName) {
+		return conditions.get(conditionName);
+	}
+
+	/**
+	 * Устройство влияния здания регистрируется в каждой комнате
+	 */
+	@Override
+	public void addInfluencer(Influencer influencer) {
+		for (Room room : rooms) {
+			room.addInfluencer(influencer);
+		}
+	}
+
+	@Override
+	public void removeInfluencer(Influencer influencer) {
+		for (Room room : rooms) {
+			room.removeInfluencer(influencer);
+		}
+	}
+
+	@Override
+	public void influenceChanged(Influencer influencer) {
+		for (Room room : rooms) {
+			room.influenceChanged(influencer);
+		}
+	}
+
+	public void setOutSideTemp(double outsideTemp) {
+		for (int slot = 0; slot < rooms.length; slot++) {
+			store.setOutside(slot, outsideTemp);
+		}
+	}
+
+	/**
+	 * Один шаг здания: теплообмен и шаг всех комнат, затем средние значения параметров
+	 */
+	@Override
+	public synchronized void tick() {
+		Graph graph = graph();
+		int n = rooms.length;
+		if (n == 0) return;
+		pool.invoke(new Snapshot(0, n));
+		pool.invoke(new Step(graph, 0, n));
+		for (int c = 0; c < CONDITIONS.length; c++) {
+			store.read(c, 0, n, column);
+			double sum = 0;
+			for (int i = 0; i < n; i++) {
+				sum += column[i];
+			}
+			conditions.get(CONDITIONS[c].getName()).setValue(sum / n);
+		}
+	}
+
+	/**
+	 * Этап шага: снимок температур комнат диапазона
+	 */
+	private final class Snapshot extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Snapshot(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARTITION) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Snapshot(from, middle), new Snapshot(middle, to));
+				return;
+			}
+			store.read(T, from, to, temperature);
+		}
+	}
+
+	/**
+	 * Этап шага: теплообмен комнат диапазона по снимку температур и шаг хранилища для них
+	 */
+	private final class Step extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Graph graph;
+		private final int from;
+		private final int to;
+
+		Step(Graph graph, int from, int to) {
+			this.graph = graph;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARTITION) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Step(graph, from, middle), new Step(graph, middle, to));
+				return;
+			}
+			int[] rowStart = graph.rowStart, neighbor = graph.neighbor;
+			double[] coefficient = graph.coefficient, diagonal = graph.diagonal, t = temperature;
+			for (int i = from; i < to; i++) {
+				double flow = -diagonal[i] * t[i];
+				for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+					flow += coefficient[e] * t[neighbor[e]];
+				}
+				exchange[i] = flow;
+			}
+			store.setExchange(from, to, exchange);
+			store.step(from, to);
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			tick();
+			try {
+				Thread.sleep(SimulationEngine.TICK_PERIOD);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public Clock getClock() {
+		return clock;
+	}
+}
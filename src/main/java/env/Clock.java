@@ -0,0 +1,42 @@
+package env;
+
+
+
+/**
+ * Источник времени и планировщик задач моделирования. Среда, контроллер, измерители и плавная регулировка
+ * мощности получают время и планируют свою работу только через часы, поэтому одна и та же модель может
+ * работать как в реальном времени ({@link SystemClock}), так и в виртуальном ({@link VirtualClock}) -
+ * детерминированно и так быстро, как позволяет процессор.
+ */
+public interface Clock {
+
+	/**
+	 * Запланированная задача
+	 */
+	interface Task {
+		void cancel();
+	}
+
+	/**
+	 * текущее время, мс
+	 */
+	long millis();
+
+	/**
+	 * Однократное исполнение задачи через delay мс
+	 */
+	Task schedule(Runnable task, long delay);
+
+	/**
+	 * Периодическое исполнение задачи через delay мс и далее каждые period мс. Исключение в задаче
+	 * не отменяет ее дальнейшее исполнение
+	 */
+	Task scheduleAtFixedRate(Runnable task, long delay, long period);
+
+	/**
+	 * Часы реального времени с общим планировщиком
+	 */
+	static Clock system() {
+		return SystemClock.INSTANCE;
+	}
+}
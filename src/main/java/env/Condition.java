@@ -1,5 +1,6 @@
 package env;
 
+import java.util.Arrays;
 
 
 /**
@@ -15,6 +16,11 @@ public class Condition implements Measurable{
 	public final double min;
 	public final double max;
 	volatile protected double value;
+	/**
+	 * Получатели уведомлений об изменении значения. Массив заменяется целиком при подписке (copy-on-write),
+	 * поэтому уведомление не требует блокировок
+	 */
+	private volatile ConditionListener[] listeners = new ConditionListener[0];
 
 
 	public Condition(EnvCondition condition, double min, double max) {
@@ -40,8 +46,50 @@ public class Condition implements Measurable{
 		return value;
 	}
 
+	/**
+	 * Установка нового значения с уведомлением подписчиков
+	 */
+	public void setValue(double value) {
+		double oldValue = this.value;
+		this.value = value;
+		notifyListeners(oldValue, value);
+	}
+
+	boolean hasListeners() {
+		return listeners.length > 0;
+	}
+
+	void notifyListeners(double oldValue, double newValue) {
+		ConditionListener[] current = listeners;
+		for (ConditionListener listener : current) {
+			listener.valueChanged(this, oldValue, newValue);
+		}
+	}
+
+	@Override
+	public synchronized void addListener(ConditionListener listener) {
+		for (ConditionListener existing : listeners) {
+			if (existing == listener) return;
+		}
+		ConditionListener[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+		copy[listeners.length] = listener;
+		listeners = copy;
+	}
+
+	@Override
+	public synchronized void removeListener(ConditionListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] != listener) continue;
+			ConditionListener[] copy = new ConditionListener[listeners.length - 1];
+			System.arraycopy(listeners, 0, copy, 0, i);
+			System.arraycopy(listeners, i + 1, copy, i, listeners.length - i - 1);
+			listeners = copy;
+			return;
+		}
+	}
+
 	public String toString() {
-		return String.format("%s %5.2f %s", envCondition.getName(), value, envCondition.getUnit());
+		return String.format("%s %5.2f %s", envCondition.getName(), getValue(), envCondition.getUnit());
 	}
 
 }
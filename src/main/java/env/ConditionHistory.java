@@ -0,0 +1,157 @@
+package env;
+
+
+
+/**
+ * История значений параметра климата в нескольких разрешениях: исходные значения, минутные и часовые агрегаты.
+ * Подписывается на изменения параметра ({@link ConditionListener}) и отвечает на запросы вида
+ * "средняя температура за последние 10 минут": минимум, максимум и среднее за O(log n), процентиль.
+ * Для запроса выбирается самое подробное разрешение, история которого покрывает начало окна.
+ * Запись значения не создает объектов.
+ */
+public class ConditionHistory implements ConditionListener {
+	public static final long MINUTE = 60_000;
+	public static final long HOUR = 60 * MINUTE;
+
+	/**
+	 * Разрешение истории
+	 */
+	public enum Resolution {RAW, MINUTE, HOUR}
+
+	private final Clock clock;
+	private final TimeSeries raw;
+	private final TimeSeries minutes;
+	private final TimeSeries hours;
+	private final Bucket minute = new Bucket(MINUTE);
+	private final Bucket hour = new Bucket(HOUR);
+
+	/**
+	 * Накопитель агрегата текущего интервала до его передачи в прореженный ряд
+	 */
+	private static class Bucket {
+		final long length;
+		long start = Long.MIN_VALUE;
+		double min, max, sum;
+		long count;
+
+		Bucket(long length) {
+			this.length = length;
+		}
+
+		/**
+		 * @return true - если значение относится к следующему интервалу и текущий нужно сбросить в ряд
+		 */
+		boolean isExpired(long time) {
+			return count > 0 && time - start >= length;
+		}
+
+		void flushTo(TimeSeries series) {
+			series.add(start, min, max, sum, count);
+			count = 0;
+		}
+
+		void add(long time, double intervalMin, double intervalMax, double intervalSum, long intervalCount) {
+			if (count == 0) {
+				start = time - Math.floorMod(time, length);
+				min = intervalMin;
+				max = intervalMax;
+				sum = intervalSum;
+			} else {
+				min = Math.min(min, intervalMin);
+				max = Math.max(max, intervalMax);
+				sum += intervalSum;
+			}
+			count += intervalCount;
+		}
+	}
+
+	/**
+	 * История по умолчанию: ~15 минут исходных значений (шаг комнаты 200 мс), сутки минутных и месяц часовых
+	 */
+	public ConditionHistory(boolean offHeap) {
+		this(Clock.system(), offHeap);
+	}
+
+	public ConditionHistory(Clock clock, boolean offHeap) {
+		this(clock, 4096, 1440, 720, offHeap);
+	}
+
+	/**
+	 * @param clock - часы, по которым отмечаются значения
+	 */
+	public ConditionHistory(Clock clock, int rawCapacity, int minuteCapacity, int hourCapacity, boolean offHeap) {
+		this.clock = clock;
+		raw = new TimeSeries(rawCapacity, offHeap);
+		minutes = new TimeSeries(minuteCapacity, offHeap);
+		hours = new TimeSeries(hourCapacity, offHeap);
+	}
+
+	@Override
+	public void valueChanged(Measurable condition, double oldValue, double newValue) {
+		record(clock.millis(), newValue);
+	}
+
+	public synchronized void record(long time, double value) {
+		raw.add(time, value);
+		if (minute.isExpired(time)) {
+			if (hour.isExpired(minute.start)) hour.flushTo(hours);
+			hour.add(minute.start, minute.min, minute.max, minute.sum, minute.count);
+			minute.flushTo(minutes);
+		}
+		minute.add(time, value, value, value, 1);
+	}
+
+	public TimeSeries series(Resolution resolution) {
+		switch (resolution) {
+			case RAW: return raw;
+			case MINUTE: return minutes;
+			default: return hours;
+		}
+	}
+
+	/**
+	 * Самое подробное разрешение, история которого начинается не позже from. Если ни одна история
+	 * не покрывает окно целиком - самая длинная из имеющихся. Незавершенные минута и час видны только
+	 * в исходных значениях
+	 */
+	public Resolution resolutionFor(long from) {
+		if (raw.oldestTime() <= from) return Resolution.RAW;
+		if (minutes.oldestTime() <= from) return Resolution.MINUTE;
+		if (hours.size() > 0) return Resolution.HOUR;
+		return minutes.size() > 0 ? Resolution.MINUTE : Resolution.RAW;
+	}
+
+	public double min(long from, long to) {
+		return series(resolutionFor(from)).min(from, to);
+	}
+
+	public double max(long from, long to) {
+		return series(resolutionFor(from)).max(from, to);
+	}
+
+	public double avg(long from, long to) {
+		return series(resolutionFor(from)).avg(from, to);
+	}
+
+	public double percentile(long from, long to, double p) {
+		return series(resolutionFor(from)).percentile(from, to, p);
+	}
+
+	/**
+	 * Агрегаты за последний период относительно текущего времени
+	 */
+	public double avgLast(long period) {
+		long now = clock.millis();
+		return avg(now - period, now);
+	}
+
+	public double minLast(long period) {
+		long now = clock.millis();
+		return min(now - period, now);
+	}
+
+	public double maxLast(long period) {
+		long now = clock.millis();
+		return max(now - period, now);
+	}
+}
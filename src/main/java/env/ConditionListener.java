@@ -0,0 +1,10 @@
+package env;
+
+
+
+/**
+ * Интерфейс получателя уведомлений об изменении значения параметра климата {@link Measurable}
+ */
+public interface ConditionListener {
+	void valueChanged(Measurable condition, double oldValue, double newValue);
+}
@@ -0,0 +1,277 @@
+package env;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Хранилище параметров климата множества комнат в виде столбцов примитивов (struct of arrays): для каждого
+ * параметра {@link EnvCondition} - массив значений, индексированный номером комнаты в хранилище. Шаг N комнат -
+ * несколько плотных циклов по смежным массивам без обращения к объектам и поиска по имени, которые JIT может
+ * векторизовать. Объекты {@link Measurable} комнаты остаются доступны как представления ячеек хранилища.
+ *
+ * Столбцы разбиты на блоки постоянного размера. Добавление комнаты при нехватке емкости добавляет новый блок,
+ * не перемещая существующие, поэтому шаг, чтение и запись значений не требуют блокировок и не ожидают
+ * других потоков. Шаги разных диапазонов комнат ({@link #step(int, int)}) могут исполняться параллельно.
+ */
+public class ConditionStore {
+	private static final EnvCondition[] CONDITIONS = EnvCondition.values();
+	private static final int T = EnvCondition.TEMPERATURE.ordinal();
+	/**
+	 * наибольший размер блока - комнат
+	 */
+	private static final int MAX_BLOCK = 1024;
+
+	/**
+	 * Блок столбцов [параметр][комната]: текущие значения, значения до последнего шага и суммарное воздействие
+	 * устройств влияния (поддерживается комнатой при изменении состава и мощности устройств)
+	 */
+	static final class Block {
+		final double[][] values;
+		final double[][] previous;
+		final double[][] influence;
+		final double[] outside;
+		/**
+		 * изменение температуры за шаг от теплообмена с соседними комнатами (задается зданием {@link Building})
+		 */
+		final double[] exchange;
+		/**
+		 * состояние генератора случайных изменений каждой комнаты (xorshift)
+		 */
+		final long[] random;
+		final StoredCondition[][] views;
+
+		Block(int size) {
+			values = new double[CONDITIONS.length][size];
+			previous = new double[CONDITIONS.length][size];
+			influence = new double[CONDITIONS.length][size];
+			outside = new double[size];
+			exchange = new double[size];
+			random = new long[size];
+			views = new StoredCondition[CONDITIONS.length][size];
+		}
+	}
+
+	/**
+	 * границы параметров климата, индексированные номером параметра
+	 */
+	private final double[] min = new double[CONDITIONS.length];
+	private final double[] max = new double[CONDITIONS.length];
+	/**
+	 * величина случайного изменения параметра за шаг
+	 */
+	private final double[] drift = new double[CONDITIONS.length];
+
+	private final int shift;
+	private final int mask;
+	/**
+	 * Блоки. Массив заменяется целиком при добавлении блока (copy-on-write)
+	 */
+	private volatile Block[] blocks = new Block[0];
+	private volatile int size;
+	/**
+	 * Точка публикации значений массивов блоков: запись (после изменения значений) и чтение ({@link #acquire()},
+	 * до чтения значений) этого поля обеспечивают видимость значений, записанных другим потоком. Увеличение
+	 * из нескольких потоков не атомарно - поле не является счетчиком изменений, важна лишь сама запись
+	 */
+	private volatile long version;
+
+	/**
+	 * @param capacity - ожидаемое число комнат, определяет размер блока (не более {@link #MAX_BLOCK})
+	 */
+	public ConditionStore(int capacity) {
+		bounds(EnvCondition.TEMPERATURE, 5, 45);
+		bounds(EnvCondition.HUMIDITY, 40, 86);
+		bounds(EnvCondition.ILLUMINANCE, 0, 1000);
+		int blockSize = capacity <= 1 ? 1 : Math.min(MAX_BLOCK, Integer.highestOneBit(capacity - 1) << 1);
+		shift = Integer.numberOfTrailingZeros(blockSize);
+		mask = blockSize - 1;
+	}
+
+	private void bounds(EnvCondition condition, double min, double max) {
+		this.min[condition.ordinal()] = min;
+		this.max[condition.ordinal()] = max;
+		drift[condition.ordinal()] = (max - min) / 300;
+	}
+
+	/**
+	 * Выделение ячеек под комнату
+	 * @return номер комнаты в хранилище
+	 */
+	synchronized int add(double outsideTemp, long seed) {
+		int slot = size;
+		if ((slot >>> shift) == blocks.length) {
+			Block[] copy = Arrays.copyOf(blocks, blocks.length + 1);
+			copy[blocks.length] = new Block(mask + 1);
+			blocks = copy;
+		}
+		Block block = block(slot);
+		int index = slot & mask;
+		block.outside[index] = outsideTemp;
+		block.random[index] = seed == 0 ? 1 : seed;
+		for (int c = 0; c < CONDITIONS.length; c++) {
+			block.views[c][index] = new StoredCondition(CONDITIONS[c], min[c], max[c], this, block, index);
+		}
+		size = slot + 1;
+		return slot;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private Block block(int slot) {
+		return blocks[slot >>> shift];
+	}
+
+	StoredCondition view(EnvCondition condition, int slot) {
+		return block(slot).views[condition.ordinal()][slot & mask];
+	}
+
+	/**
+	 * Чтение точки публикации перед чтением значений, записанных другими потоками
+	 */
+	private void acquire() {
+		@SuppressWarnings("unused")
+		long published = version;
+	}
+
+	double get(Block block, int condition, int index) {
+		acquire();
+		return block.values[condition][index];
+	}
+
+	/**
+	 * @return предыдущее значение
+	 */
+	double set(Block block, int condition, int index, double value) {
+		double[] column = block.values[condition];
+		double old = column[index];
+		column[index] = value;
+		version++;
+		return old;
+	}
+
+	/**
+	 * Изменение суммарного воздействия устройств на параметр комнаты. Изменения воздействия на одну комнату
+	 * должны быть упорядочены вызывающим
+	 */
+	void addInfluence(int condition, int slot, double delta) {
+		block(slot).influence[condition][slot & mask] += delta;
+		version++;
+	}
+
+	void setInfluence(int condition, int slot, double value) {
+		block(slot).influence[condition][slot & mask] = value;
+		version++;
+	}
+
+	double getInfluence(int condition, int slot) {
+		acquire();
+		return block(slot).influence[condition][slot & mask];
+	}
+
+	double getOutside(int slot) {
+		acquire();
+		return block(slot).outside[slot & mask];
+	}
+
+	void setOutside(int slot, double temp) {
+		block(slot).outside[slot & mask] = temp;
+		version++;
+	}
+
+	/**
+	 * Копирование значений параметра комнат [from, to) в target[from, to)
+	 */
+	void read(int condition, int from, int to, double[] target) {
+		acquire();
+		Block[] blocks = this.blocks;
+		for (int slot = from; slot < to; ) {
+			int end = Math.min(to, ((slot >>> shift) + 1) << shift);
+			System.arraycopy(blocks[slot >>> shift].values[condition], slot & mask, target, slot, end - slot);
+			slot = end;
+		}
+	}
+
+	/**
+	 * Изменение температуры комнат [from, to) от теплообмена, учитываемое их следующими шагами
+	 */
+	void setExchange(int from, int to, double[] exchange) {
+		Block[] blocks = this.blocks;
+		for (int slot = from; slot < to; ) {
+			int end = Math.min(to, ((slot >>> shift) + 1) << shift);
+			System.arraycopy(exchange, slot, blocks[slot >>> shift].exchange, slot & mask, end - slot);
+			slot = end;
+		}
+		version++;
+	}
+
+	/**
+	 * Один шаг всех комнат хранилища
+	 */
+	public void step() {
+		step(0, size);
+	}
+
+	/**
+	 * Один шаг комнат [from, to): температура стремится к внешней (и к температуре соседних комнат здания),
+	 * остальные параметры меняются случайно, к изменению добавляется воздействие включенных устройств.
+	 * После шага подписчики представлений уведомляются об изменении значений
+	 */
+	public void step(int from, int to) {
+		// воздействие и внешняя температура изменяются другими потоками
+		acquire();
+		Block[] blocks = this.blocks;
+		for (int slot = from; slot < to; ) {
+			int end = Math.min(to, ((slot >>> shift) + 1) << shift);
+			step(blocks[slot >>> shift], slot & mask, ((end - 1) & mask) + 1);
+			slot = end;
+		}
+		version++;
+		for (int slot = from; slot < to; ) {
+			int end = Math.min(to, ((slot >>> shift) + 1) << shift);
+			notifyListeners(blocks[slot >>> shift], slot & mask, ((end - 1) & mask) + 1);
+			slot = end;
+		}
+	}
+
+	private void step(Block block, int from, int to) {
+		long[] random = block.random;
+		for (int i = from; i < to; i++) {
+			long x = random[i];
+			x ^= x << 13;
+			x ^= x >>> 7;
+			x ^= x << 17;
+			random[i] = x;
+		}
+		for (int c = 0; c < CONDITIONS.length; c++) {
+			double[] value = block.values[c], old = block.previous[c], effect = block.influence[c];
+			double lo = min[c], hi = max[c], step = drift[c];
+			System.arraycopy(value, from, old, from, to - from);
+			if (c == T) {
+				double[] outside = block.outside, exchange = block.exchange;
+				for (int i = from; i < to; i++) {
+					double v = value[i] + (outside[i] - value[i]) / 200 + exchange[i];
+					value[i] = Math.min(hi, Math.max(lo, v)) + effect[i] / 60;
+				}
+			} else {
+				for (int i = from; i < to; i++) {
+					double v = value[i] + (((random[i] >>> c) & 1) == 0 ? -step : step);
+					value[i] = Math.min(hi, Math.max(lo, v)) + effect[i] / 60;
+				}
+			}
+		}
+	}
+
+	private static void notifyListeners(Block block, int from, int to) {
+		for (int c = 0; c < CONDITIONS.length; c++) {
+			StoredCondition[] views = block.views[c];
+			double[] values = block.values[c], previous = block.previous[c];
+			for (int i = from; i < to; i++) {
+				StoredCondition view = views[i];
+				if (view.hasListeners()) view.notifyListeners(previous[i], values[i]);
+			}
+		}
+	}
+}
@@ -7,4 +7,21 @@ public interface Environment extends Runnable{
 	Measurable getCondition(String conditionName);
 	void addInfluencer(Influencer influencer);
 	void removeInfluencer(Influencer influencer);
+
+	/**
+	 * Уведомление об изменении воздействия устройства (например, мощности). Должно вызываться устройством
+	 * влияния при каждом изменении {@link Influencer#getActualInfluence()}
+	 */
+	void influenceChanged(Influencer influencer);
+
+	/**
+	 * Один шаг изменения параметров среды. Позволяет исполнять множество сред
+	 * общим планировщиком ({@link SimulationEngine}) вместо отдельного потока на каждую
+	 */
+	void tick();
+
+	/**
+	 * Часы среды - источник времени для устройств, работающих в ней {@link Clock}
+	 */
+	Clock getClock();
 }
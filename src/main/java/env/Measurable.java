@@ -10,10 +10,13 @@ package env;
  * - название
  * - единицы измерения
  * - числовое значение характеристики
+ * и подписаться на изменения значения
  */
 public interface Measurable {
 	EnvCondition getEnvCondition();
 	String getUnit();
 	String getName();
 	double getValue();
+	void addListener(ConditionListener listener);
+	void removeListener(ConditionListener listener);
 }
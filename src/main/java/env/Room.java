@@ -3,6 +3,7 @@ package env;
 import device.Influencer;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 
@@ -13,23 +14,53 @@ import java.util.*;
 public class Room implements Environment, Runnable {
 	/**
 	 * Данные о имеющихся параметрах климата, а так устройствах, находящихся в этой среде и воздействующих на нее.
+	 * Значения параметров хранятся в столбцах хранилища {@link ConditionStore} (возможно, общего для множества
+	 * комнат), параметры климата комнаты - представления ее ячеек
 	 */
+	private final ConditionStore store;
+	private final int slot;
 	private Map<String, Condition> conditions;
-	private List<Influencer> influencers;
 	/**
-	 * параметр внешнего воздействия на среду
+	 * Устройства влияния и их учтенное воздействие. Суммарное воздействие на каждый параметр хранится
+	 * в хранилище и обновляется при добавлении, удалении устройства и изменении его мощности, поэтому
+	 * шаг не зависит от числа устройств и не обращается к реестру. Изменения реестра и сумм упорядочены
+	 * монитором комнаты, чтение реестра ({@link #getInfluencers()}) блокировок не требует
 	 */
-	volatile double outsideTemp;
+	private final Map<Influencer, Double> influencers = new ConcurrentHashMap<>();
+	private final int[] influencerCount = new int[EnvCondition.values().length];
+	/**
+	 * История параметров климата, для которых она включена
+	 */
+	private final Map<String, ConditionHistory> histories = new ConcurrentHashMap<>();
+	private final Clock clock;
 
 	public Room() {
-		conditions = new HashMap<>(4);
-		conditions.put(EnvCondition.Constants.TEMPERATURE_C, new Condition(EnvCondition.TEMPERATURE, 5, 45));
-		conditions.put(EnvCondition.Constants.RELATIVE_HUMIDITY, new Condition(EnvCondition.HUMIDITY, 40, 86));
-		conditions.put(EnvCondition.Constants.LIGHT_ILLUMINANCE, new Condition(EnvCondition.ILLUMINANCE, 0, 1000));
-		influencers = new ArrayList<>();
-		Random rand = new Random(System.currentTimeMillis());
-		outsideTemp = rand.nextInt(35);
+		this(Clock.system(), System.currentTimeMillis());
+	}
+
+	/**
+	 * @param clock - часы среды
+	 * @param seed - начальное значение генератора случайных изменений (одинаковое значение дает одинаковую модель)
+	 */
+	public Room(Clock clock, long seed) {
+		this(new ConditionStore(1), clock, seed);
+	}
+
+	/**
+	 * Комната, параметры климата которой хранятся в общем хранилище. Шаг такой комнаты выполняется либо
+	 * ей самой ({@link #tick()}), либо пакетом всех комнат хранилища ({@link ConditionStore#step()}) - но не обоими
+	 */
+	public Room(ConditionStore store, Clock clock, long seed) {
+		this.clock = clock;
+		this.store = store;
+		Random rand = new Random(seed);
+		double outsideTemp = rand.nextInt(35);
 		outsideTemp *= rand.nextBoolean() ? 1 : -1;
+		slot = store.add(outsideTemp, rand.nextLong());
+		conditions = new HashMap<>(4);
+		for (EnvCondition condition : EnvCondition.values()) {
+			conditions.put(condition.getName(), store.view(condition, slot));
+		}
 	}
 
 	public Measurable getCondition(String conditionName) {
@@ -37,13 +68,46 @@ public class Room implements Environment, Runnable {
 	}
 
 	@Override
-	public void addInfluencer(Influencer influencer) {
-		influencers.add(influencer);
+	public synchronized void addInfluencer(Influencer influencer) {
+		if (influencers.containsKey(influencer)) return;
+		double influence = influencer.getActualInfluence();
+		influencers.put(influencer, influence);
+		int condition = influencer.getInfluenced().ordinal();
+		influencerCount[condition]++;
+		store.addInfluence(condition, slot, influence);
 	}
 
 	@Override
-	public void removeInfluencer(Influencer influencer) {
-		influencers.remove(influencer);
+	public synchronized void removeInfluencer(Influencer influencer) {
+		Double influence = influencers.remove(influencer);
+		if (influence == null) return;
+		int condition = influencer.getInfluenced().ordinal();
+		// при удалении последнего устройства сумма обнуляется, чтобы не копить ошибку округления
+		if (--influencerCount[condition] == 0) store.setInfluence(condition, slot, 0);
+		else store.addInfluence(condition, slot, -influence);
+	}
+
+	@Override
+	public synchronized void influenceChanged(Influencer influencer) {
+		Double influence = influencers.get(influencer);
+		if (influence == null) return;
+		double actual = influencer.getActualInfluence();
+		influencers.put(influencer, actual);
+		store.addInfluence(influencer.getInfluenced().ordinal(), slot, actual - influence);
+	}
+
+	/**
+	 * Устройства влияния, воздействующие на среду (слабо согласованный снимок)
+	 */
+	public Collection<Influencer> getInfluencers() {
+		return Collections.unmodifiableSet(influencers.keySet());
+	}
+
+	/**
+	 * Суммарное текущее воздействие устройств на параметр климата
+	 */
+	public double getInfluence(EnvCondition condition) {
+		return store.getInfluence(condition.ordinal(), slot);
 	}
 
 	@Override
@@ -51,7 +115,7 @@ public class Room implements Environment, Runnable {
 		Map<String, Condition> conditionsSnapshot;
 		while (true) {
 //			conditionsSnapshot = new HashMap<>(conditions);
-			conditions.values().forEach(this::update);
+			tick();
 //			conditions = new HashMap<>(conditionsSnapshot);
 			try {
 				Thread.sleep(200);
@@ -61,24 +125,44 @@ public class Room implements Environment, Runnable {
 		}
 	}
 	
-	private void update(Condition condition) {
-		Random rand = new Random(System.currentTimeMillis());
-		double step = (condition.max - condition.min) / 300;
-		double sign = rand.nextBoolean() ? -1f : 1f;
-		if(condition.envCondition.equals(EnvCondition.TEMPERATURE)) {
-			sign = 1f;
-			step = (outsideTemp - condition.value) / 200;
-		}
-		condition.value += sign*step;
-		if (condition.value > condition.max) condition.value = condition.max;
-		if (condition.value < condition.min) condition.value = condition.min;
-		influencers.stream()
-				.filter(influencer -> influencer.getInfluenced().equals(condition.envCondition))
-				.forEach(influencer ->  condition.value += (influencer.getActualInfluence()/60f));
+	/**
+	 * Один шаг изменения параметров климата
+	 */
+	@Override
+	public void tick() {
+		store.step(slot, slot + 1);
+	}
+
+	/**
+	 * Включение записи истории параметра климата
+	 * @param offHeap - хранить историю вне кучи
+	 * @return история параметра (существующая, если запись уже включена)
+	 */
+	public ConditionHistory recordHistory(String conditionName, boolean offHeap) {
+		Condition condition = conditions.get(conditionName);
+		if (condition == null) throw new IllegalArgumentException("unknown condition - " + conditionName);
+		return histories.computeIfAbsent(conditionName, name -> {
+			ConditionHistory history = new ConditionHistory(clock, offHeap);
+			condition.addListener(history);
+			return history;
+		});
+	}
+
+	public ConditionHistory getHistory(String conditionName) {
+		return histories.get(conditionName);
+	}
+
+	@Override
+	public Clock getClock() {
+		return clock;
+	}
+
+	public double getOutSideTemp() {
+		return store.getOutside(slot);
 	}
 
 	public void setOutSideTemp(double outsideTemp) {
-		this.outsideTemp = outsideTemp;
+		store.setOutside(slot, outsideTemp);
 	}
 
 }
@@ -0,0 +1,266 @@
+package env;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * Движок моделирования множества сред (комнат). Вместо отдельного потока с бесконечным циклом на каждую
+ * комнату, среды распределяются по сегментам (shards), число которых равно числу ядер. Каждый сегмент
+ * исполняется как периодическая задача часов {@link Clock} и за один проход выполняет шаг {@link Environment#tick()}
+ * всех своих комнат. С часами реального времени сегменты исполняются параллельно общим пулом потоков,
+ * с виртуальными - последовательно и детерминированно.
+ *
+ * Комнаты общего хранилища {@link ConditionStore} добавляются хранилищем целиком ({@link #add(ConditionStore)}):
+ * каждый сегмент выполняет шаг своей доли комнат хранилища одним пакетом по столбцам.
+ *
+ * Движок ведет счет выполненных шагов и сообщает их частоту ({@link #getTicksPerSecond()}), что позволяет
+ * оценить необходимую мощность оборудования для больших зданий.
+ */
+public class SimulationEngine {
+	/**
+	 * период шага моделирования, мс
+	 */
+	public static final long TICK_PERIOD = 200;
+
+	private final Object lock = new Object();
+	/**
+	 * Сегменты сред. Массивы заменяются целиком при добавлении или удалении среды (copy-on-write) и публикуются
+	 * через атомарный массив ссылок, поэтому проход по сегменту не требует блокировок
+	 */
+	private final AtomicReferenceArray<Environment[]> shards;
+	private volatile ConditionStore[] stores = new ConditionStore[0];
+	private final Clock clock;
+	private final List<Clock.Task> tasks = new ArrayList<>();
+	/**
+	 * пул для синхронного шага {@link #step()}, создается при первом обращении
+	 */
+	private ExecutorService workers;
+	private final LongAdder ticks = new LongAdder();
+	/**
+	 * длительность шага одной комнаты
+	 */
+	private final LatencyHistogram tickLatency = new LatencyHistogram();
+	private volatile int size;
+
+	private final long startTime = System.nanoTime();
+	private long lastReportTime = startTime;
+	private long lastReportTicks;
+
+	public SimulationEngine() {
+		this(Clock.system(), Runtime.getRuntime().availableProcessors());
+	}
+
+	public SimulationEngine(Clock clock, int shardCount) {
+		if (shardCount < 1) throw new IllegalArgumentException("shard count must be positive - " + shardCount);
+		this.clock = clock;
+		shards = new AtomicReferenceArray<>(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			shards.set(i, new Environment[0]);
+		}
+	}
+
+	/**
+	 * Добавление среды в сегмент с наименьшим числом сред
+	 */
+	public void add(Environment env) {
+		synchronized (lock) {
+			int target = 0;
+			for (int i = 1; i < shards.length(); i++) {
+				if (shards.get(i).length < shards.get(target).length) target = i;
+			}
+			Environment[] shard = Arrays.copyOf(shards.get(target), shards.get(target).length + 1);
+			shard[shard.length - 1] = env;
+			shards.set(target, shard);
+			size++;
+		}
+	}
+
+	/**
+	 * Добавление всех комнат хранилища, в том числе добавленных в него позднее. Комнаты хранилища
+	 * не следует добавлять в движок по отдельности
+	 */
+	public void add(ConditionStore store) {
+		synchronized (lock) {
+			ConditionStore[] copy = Arrays.copyOf(stores, stores.length + 1);
+			copy[stores.length] = store;
+			stores = copy;
+		}
+	}
+
+	public boolean remove(ConditionStore store) {
+		synchronized (lock) {
+			List<ConditionStore> list = new ArrayList<>(Arrays.asList(stores));
+			boolean removed = list.remove(store);
+			stores = list.toArray(new ConditionStore[0]);
+			return removed;
+		}
+	}
+
+	public boolean remove(Environment env) {
+		synchronized (lock) {
+			for (int i = 0; i < shards.length(); i++) {
+				Environment[] shard = shards.get(i);
+				for (int j = 0; j < shard.length; j++) {
+					if (shard[j] != env) continue;
+					Environment[] copy = new Environment[shard.length - 1];
+					System.arraycopy(shard, 0, copy, 0, j);
+					System.arraycopy(shard, j + 1, copy, j, shard.length - j - 1);
+					shards.set(i, copy);
+					size--;
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	public int size() {
+		int rooms = size;
+		for (ConditionStore store : stores) {
+			rooms += store.size();
+		}
+		return rooms;
+	}
+
+	public int getShardCount() {
+		return shards.length();
+	}
+
+	/**
+	 * Запуск периодического моделирования: каждый сегмент выполняет шаг своих сред раз в {@link #TICK_PERIOD} мс
+	 */
+	public void start() {
+		synchronized (lock) {
+			if (!tasks.isEmpty()) return;
+			for (int i = 0; i < shards.length(); i++) {
+				final int shard = i;
+				tasks.add(clock.scheduleAtFixedRate(() -> tickShard(shard), 0, TICK_PERIOD));
+			}
+		}
+	}
+
+	public void stop() {
+		synchronized (lock) {
+			tasks.forEach(Clock.Task::cancel);
+			tasks.clear();
+		}
+	}
+
+	public void shutdown() {
+		stop();
+		synchronized (lock) {
+			if (workers != null) workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Синхронный шаг всех сред: сегменты исполняются параллельно в пуле, метод возвращает управление
+	 * по завершении всех сегментов
+	 */
+	public void step() throws InterruptedException {
+		List<Callable<Void>> batch = new ArrayList<>(shards.length());
+		for (int i = 0; i < shards.length(); i++) {
+			final int shard = i;
+			batch.add(() -> {
+				tickShard(shard);
+				return null;
+			});
+		}
+		workers().invokeAll(batch);
+	}
+
+	private ExecutorService workers() {
+		synchronized (lock) {
+			if (workers == null) {
+				workers = Executors.newFixedThreadPool(shards.length(), runnable -> {
+					Thread thread = new Thread(runnable, "simulation-shard");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			return workers;
+		}
+	}
+
+	private void tickShard(int shard) {
+		Environment[] envs = shards.get(shard);
+		for (Environment env : envs) {
+			long started = System.nanoTime();
+			try {
+				env.tick();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			tickLatency.recordSince(started);
+		}
+		ticks.add(envs.length);
+		for (ConditionStore store : stores) {
+			int rooms = store.size();
+			int from = (int) ((long) rooms * shard / shards.length());
+			int to = (int) ((long) rooms * (shard + 1) / shards.length());
+			if (from == to) continue;
+			long started = System.nanoTime();
+			try {
+				store.step(from, to);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			// комнаты хранилища выполняют шаг пакетом - учитывается средняя длительность шага комнаты в пакете
+			tickLatency.record((System.nanoTime() - started) / (to - from));
+			ticks.add(to - from);
+		}
+	}
+
+	/**
+	 * Гистограмма длительности шага комнаты
+	 */
+	public LatencyHistogram getTickLatency() {
+		return tickLatency;
+	}
+
+	/**
+	 * Регистрация гистограммы длительности шага комнаты в JMX: smarthouse:type=Latency,name="имя room tick"
+	 */
+	public void registerMBeans(String name) {
+		Metrics.register("Latency", name + " room tick", tickLatency);
+	}
+
+	public long getTicks() {
+		return ticks.sum();
+	}
+
+	/**
+	 * Частота шагов сред (всех комнат вместе) с момента предыдущего вызова
+	 */
+	public double getTicksPerSecond() {
+		synchronized (lock) {
+			long now = System.nanoTime();
+			long total = ticks.sum();
+			double rate = (total - lastReportTicks) * 1e9 / Math.max(1, now - lastReportTime);
+			lastReportTime = now;
+			lastReportTicks = total;
+			return rate;
+		}
+	}
+
+	/**
+	 * Средняя частота шагов сред с создания движка (не влияет на {@link #getTicksPerSecond()})
+	 */
+	public double getAverageTicksPerSecond() {
+		return ticks.sum() * 1e9 / Math.max(1, System.nanoTime() - startTime);
+	}
+
+	public String toString() {
+		return String.format("simulation: %d rooms in %d shards, %.1f ticks/s", size(), shards.length(),
+				getAverageTicksPerSecond());
+	}
+}
@@ -0,0 +1,34 @@
+package env;
+
+
+
+/**
+ * Параметр климата комнаты - представление ячейки хранилища {@link ConditionStore}. Значение хранится
+ * в столбце блока хранилища, подписчики - в самом представлении
+ */
+class StoredCondition extends Condition {
+	private final ConditionStore store;
+	private final ConditionStore.Block block;
+	private final int column;
+	private final int index;
+
+	StoredCondition(EnvCondition condition, double min, double max, ConditionStore store, ConditionStore.Block block,
+			int index) {
+		super(condition, min, max);
+		this.store = store;
+		this.block = block;
+		this.column = condition.ordinal();
+		this.index = index;
+	}
+
+	@Override
+	public double getValue() {
+		return store.get(block, column, index);
+	}
+
+	@Override
+	public void setValue(double value) {
+		double oldValue = store.set(block, column, index, value);
+		notifyListeners(oldValue, value);
+	}
+}
@@ -0,0 +1,62 @@
+package env;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Часы реального времени. Задачи исполняются общим пулом потоков по числу ядер
+ */
+public class SystemClock implements Clock {
+	static final SystemClock INSTANCE = new SystemClock(Runtime.getRuntime().availableProcessors());
+
+	private final ScheduledExecutorService scheduler;
+
+	public SystemClock(int threads) {
+		scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "clock");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public long millis() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public Task schedule(Runnable task, long delay) {
+		return cancellable(scheduler.schedule(reporting(task), delay, TimeUnit.MILLISECONDS));
+	}
+
+	@Override
+	public Task scheduleAtFixedRate(Runnable task, long delay, long period) {
+		return cancellable(scheduler.scheduleAtFixedRate(reporting(task), delay, period, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Задача, сообщающая о своих исключениях: пул сохраняет исключение в ScheduledFuture, который никто
+	 * не проверяет, а периодическая задача после исключения больше не исполняется
+	 */
+	private static Runnable reporting(Runnable task) {
+		return () -> {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		};
+	}
+
+	private static Task cancellable(ScheduledFuture<?> future) {
+		return () -> future.cancel(false);
+	}
+
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+}
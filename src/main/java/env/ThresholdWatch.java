@@ -0,0 +1,82 @@
+package env;
+
+
+
+/**
+ * Наблюдатель за пересечением порогов параметра климата относительно заданного значения (уставки).
+ * Значение параметра относится к одной из зон:
+ *  0 - отклонение от уставки меньше внутреннего порога (точности)
+ * ±1 - отклонение между внутренним и внешним порогом (гистерезис)
+ * ±2 - отклонение больше внешнего порога
+ * знак зоны - знак отклонения значения от уставки. Получатель уведомляется только при смене зоны,
+ * а не при каждом изменении значения.
+ *
+ * Один наблюдатель может быть подписан на несколько экземпляров параметра (например, несколько измерителей),
+ * в этом случае зона определяется по последнему изменившемуся значению - лишнее уведомление возможно,
+ * пропущенное - нет.
+ */
+public class ThresholdWatch implements ConditionListener {
+	public static final int INSIDE = 0;
+	public static final int HYSTERESIS = 1;
+	public static final int OUTSIDE = 2;
+	private static final int UNKNOWN = Integer.MIN_VALUE;
+
+	/**
+	 * Получатель уведомлений о смене зоны
+	 */
+	public interface Listener {
+		void thresholdCrossed(ThresholdWatch watch, Measurable condition, int zone);
+	}
+
+	private final Listener listener;
+	private volatile double center = Double.NaN;
+	private volatile double inner;
+	private volatile double outer;
+	private volatile int zone = UNKNOWN;
+
+	public ThresholdWatch(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Задание уставки и порогов. Текущая зона сбрасывается - следующее изменение значения приведет к уведомлению
+	 * @param center - уставка
+	 * @param inner - внутренний порог (точность)
+	 * @param outer - внешний порог
+	 */
+	public void setBand(double center, double inner, double outer) {
+		this.inner = inner;
+		this.outer = outer;
+		this.center = center;
+		zone = UNKNOWN;
+	}
+
+	public double getCenter() {
+		return center;
+	}
+
+	public int getZone() {
+		return zone;
+	}
+
+	/**
+	 * Зона значения относительно текущих порогов
+	 */
+	public int zoneOf(double value) {
+		double delta = value - center;
+		double abs = Math.abs(delta);
+		int sign = delta < 0 ? -1 : 1;
+		if (abs < inner) return INSIDE;
+		if (abs <= outer) return sign * HYSTERESIS;
+		return sign * OUTSIDE;
+	}
+
+	@Override
+	public void valueChanged(Measurable condition, double oldValue, double newValue) {
+		if (Double.isNaN(center)) return;
+		int current = zoneOf(newValue);
+		if (current == zone) return;
+		zone = current;
+		listener.thresholdCrossed(this, condition, current);
+	}
+}
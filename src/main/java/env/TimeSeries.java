@@ -0,0 +1,234 @@
+package env;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+
+
+/**
+ * Временной ряд фиксированной емкости - кольцевой буфер примитивов. Каждая ячейка хранит агрегат интервала
+ * (минимум, максимум, сумму и количество значений) - для исходных значений интервал состоит из одного значения,
+ * для прореженных рядов ({@link ConditionHistory}) - из всех значений минуты или часа.
+ *
+ * Поверх ячеек построено дерево отрезков, поэтому минимум, максимум и среднее за любое окно вычисляются
+ * за O(log n), запись значения - также O(log n). Запись и запросы не создают объектов.
+ * Данные могут храниться вне кучи (direct buffer), что снимает нагрузку со сборщика мусора при длинной истории.
+ */
+public class TimeSeries {
+	private final int capacity;
+	private final int mask;
+	private final LongBuffer times;
+	/**
+	 * Дерево отрезков: листья - ячейки [capacity, 2*capacity), узел i агрегирует узлы 2i и 2i+1
+	 */
+	private final DoubleBuffer min;
+	private final DoubleBuffer max;
+	private final DoubleBuffer sum;
+	private final DoubleBuffer count;
+	/**
+	 * рабочий буфер для вычисления процентилей
+	 */
+	private final double[] scratch;
+	private int head;
+	private int size;
+
+	/**
+	 * @param capacity - емкость, округляется вверх до степени двойки
+	 * @param offHeap - хранить данные вне кучи
+	 */
+	public TimeSeries(int capacity, boolean offHeap) {
+		if (capacity < 1) throw new IllegalArgumentException("capacity must be positive - " + capacity);
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		mask = this.capacity - 1;
+		times = offHeap ? direct(this.capacity * Long.BYTES).asLongBuffer() : LongBuffer.allocate(this.capacity);
+		min = doubles(2 * this.capacity, offHeap);
+		max = doubles(2 * this.capacity, offHeap);
+		sum = doubles(2 * this.capacity, offHeap);
+		count = doubles(2 * this.capacity, offHeap);
+		for (int i = 1; i < 2 * this.capacity; i++) {
+			min.put(i, Double.POSITIVE_INFINITY);
+			max.put(i, Double.NEGATIVE_INFINITY);
+		}
+		scratch = new double[this.capacity];
+	}
+
+	private static ByteBuffer direct(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	private static DoubleBuffer doubles(int length, boolean offHeap) {
+		return offHeap ? direct(length * Double.BYTES).asDoubleBuffer() : DoubleBuffer.allocate(length);
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Время самой старой ячейки или Long.MAX_VALUE, если ряд пуст
+	 */
+	public synchronized long oldestTime() {
+		return size == 0 ? Long.MAX_VALUE : times.get(slot(0));
+	}
+
+	public synchronized long newestTime() {
+		return size == 0 ? Long.MIN_VALUE : times.get(slot(size - 1));
+	}
+
+	/**
+	 * Добавление значения. Время должно не убывать
+	 */
+	public void add(long time, double value) {
+		add(time, value, value, value, 1);
+	}
+
+	/**
+	 * Добавление агрегата интервала, начинающегося в момент time. Самая старая ячейка вытесняется при заполнении
+	 */
+	public synchronized void add(long time, double intervalMin, double intervalMax, double intervalSum, long intervalCount) {
+		int slot = head;
+		head = (head + 1) & mask;
+		if (size < capacity) size++;
+		times.put(slot, time);
+		int node = slot + capacity;
+		min.put(node, intervalMin);
+		max.put(node, intervalMax);
+		sum.put(node, intervalSum);
+		count.put(node, intervalCount);
+		for (node >>= 1; node > 0; node >>= 1) {
+			int left = node << 1, right = left | 1;
+			min.put(node, Math.min(min.get(left), min.get(right)));
+			max.put(node, Math.max(max.get(left), max.get(right)));
+			sum.put(node, sum.get(left) + sum.get(right));
+			count.put(node, count.get(left) + count.get(right));
+		}
+	}
+
+	public synchronized double min(long from, long to) {
+		return aggregate(from, to, MIN);
+	}
+
+	public synchronized double max(long from, long to) {
+		return aggregate(from, to, MAX);
+	}
+
+	/**
+	 * Среднее значение за окно [from, to] или NaN, если в окне нет значений
+	 */
+	public synchronized double avg(long from, long to) {
+		double n = aggregate(from, to, COUNT);
+		return n == 0 ? Double.NaN : aggregate(from, to, SUM) / n;
+	}
+
+	public synchronized long count(long from, long to) {
+		return (long) aggregate(from, to, COUNT);
+	}
+
+	/**
+	 * Процентиль за окно [from, to] (p от 0 до 1). Для прореженных рядов вычисляется по средним значениям ячеек.
+	 * В отличие от остальных агрегатов выполняется за линейное от размера окна время (quickselect без аллокаций),
+	 * поэтому для длинных окон следует использовать прореженный ряд
+	 */
+	public synchronized double percentile(long from, long to, double p) {
+		int first = lowerBound(from), last = upperBound(to);
+		int n = last - first;
+		if (n <= 0) return Double.NaN;
+		for (int i = 0; i < n; i++) {
+			int node = slot(first + i) + capacity;
+			scratch[i] = sum.get(node) / count.get(node);
+		}
+		int k = (int) Math.min(n - 1, Math.max(0, Math.round(p * (n - 1))));
+		return select(scratch, n, k);
+	}
+
+	private static final int MIN = 0, MAX = 1, SUM = 2, COUNT = 3;
+
+	private double aggregate(long from, long to, int kind) {
+		int first = lowerBound(from), last = upperBound(to);
+		double result = identity(kind);
+		if (last <= first) return result;
+		int start = slot(first), end = slot(last - 1) + 1;
+		if (start < end) return query(start, end, kind);
+		// окно пересекает границу кольца
+		return combine(kind, query(start, capacity, kind), query(0, end, kind));
+	}
+
+	/**
+	 * Агрегат ячеек [from, to) по дереву отрезков
+	 */
+	private double query(int from, int to, int kind) {
+		double result = identity(kind);
+		for (int l = from + capacity, r = to + capacity; l < r; l >>= 1, r >>= 1) {
+			if ((l & 1) == 1) result = combine(kind, result, node(l++, kind));
+			if ((r & 1) == 1) result = combine(kind, result, node(--r, kind));
+		}
+		return result;
+	}
+
+	private double node(int index, int kind) {
+		switch (kind) {
+			case MIN: return min.get(index);
+			case MAX: return max.get(index);
+			case SUM: return sum.get(index);
+			default: return count.get(index);
+		}
+	}
+
+	private static double identity(int kind) {
+		return kind == MIN ? Double.POSITIVE_INFINITY : kind == MAX ? Double.NEGATIVE_INFINITY : 0;
+	}
+
+	private static double combine(int kind, double a, double b) {
+		return kind == MIN ? Math.min(a, b) : kind == MAX ? Math.max(a, b) : a + b;
+	}
+
+	/**
+	 * Первый логический индекс (0 - самая старая ячейка) со временем не меньше заданного
+	 */
+	private int lowerBound(long time) {
+		int lo = 0, hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (times.get(slot(mid)) < time) lo = mid + 1; else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Первый логический индекс со временем больше заданного
+	 */
+	private int upperBound(long time) {
+		return time == Long.MAX_VALUE ? size : lowerBound(time + 1);
+	}
+
+	private int slot(int logical) {
+		return (head - size + logical) & mask;
+	}
+
+	private static double select(double[] a, int n, int k) {
+		int lo = 0, hi = n - 1;
+		while (lo < hi) {
+			double pivot = a[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (a[i] < pivot) i++;
+				while (a[j] > pivot) j--;
+				if (i <= j) {
+					double tmp = a[i];
+					a[i++] = a[j];
+					a[j--] = tmp;
+				}
+			}
+			if (k <= j) hi = j;
+			else if (k >= i) lo = i;
+			else return a[k];
+		}
+		return a[k];
+	}
+}
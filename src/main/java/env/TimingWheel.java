@@ -0,0 +1,228 @@
+package env;
+
+
+
+/**
+ * Иерархическое колесо таймеров для большого числа отложенных событий (например, переходов расписаний
+ * уставок во многих домах). Время делится на такты; уровень колеса - 64 ячейки, ячейка уровня L охватывает
+ * 64^L тактов. Таймер помещается в ячейку уровня, соответствующего сроку до события, по битам такта события,
+ * и хранится в двусвязном списке ячейки, поэтому добавление и отмена - O(1). Каждый такт срабатывают таймеры
+ * ячейки нулевого уровня; при полном обороте уровня таймеры очередной ячейки следующего уровня переносятся
+ * на нижние уровни (каждый таймер переносится не более числа уровней раз - срабатывание в среднем O(1)).
+ *
+ * Колесо продвигается одной периодической задачей часов {@link Clock} раз в такт - отдельный поток
+ * или задача часов на таймер не нужны. Таймеры - объекты пользователя ({@link Timer}), переиспользуемые
+ * при повторном планировании, поэтому работа колеса не создает объектов. Таймеры срабатывают
+ * вне блокировки колеса и могут планировать себя и другие таймеры заново
+ */
+public class TimingWheel {
+	private static final int BITS = 6;
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+	private static final int LEVELS = 6;
+
+	/**
+	 * Таймер колеса. Срабатывает в такте, на который приходится срок, или в ближайшем следующем
+	 */
+	public static abstract class Timer {
+		Timer prev;
+		Timer next;
+		long tick;
+
+		/**
+		 * Действие таймера (таймер к этому моменту снят с колеса)
+		 */
+		protected abstract void expire();
+
+		/**
+		 * @return запланирован ли таймер
+		 */
+		public final boolean isScheduled() {
+			return next != null;
+		}
+	}
+
+	/**
+	 * Голова кольцевого списка ячейки
+	 */
+	private static final class Head extends Timer {
+		Head() {
+			prev = this;
+			next = this;
+		}
+
+		@Override
+		protected void expire() {
+		}
+	}
+
+	private final Clock clock;
+	private final long tickMillis;
+	private final Head[][] wheel = new Head[LEVELS][SLOTS];
+	/**
+	 * таймеры текущего такта, ожидающие срабатывания
+	 */
+	private final Head expiring = new Head();
+	private final Object advancing = new Object();
+	/**
+	 * номер последнего обработанного такта
+	 */
+	private long current;
+	private int size;
+	private long expired;
+	private Clock.Task task;
+
+	/**
+	 * @param tickMillis - длительность такта, мс - точность срабатывания таймеров
+	 */
+	public TimingWheel(Clock clock, long tickMillis) {
+		if (tickMillis <= 0) throw new IllegalArgumentException("tick must be positive - " + tickMillis);
+		this.clock = clock;
+		this.tickMillis = tickMillis;
+		for (Head[] level : wheel) {
+			for (int i = 0; i < SLOTS; i++) level[i] = new Head();
+		}
+		current = clock.millis() / tickMillis;
+	}
+
+	/**
+	 * Запуск продвижения колеса задачей часов раз в такт
+	 */
+	public synchronized void start() {
+		if (task == null) task = clock.scheduleAtFixedRate(() -> advance(clock.millis()), tickMillis, tickMillis);
+	}
+
+	public synchronized void stop() {
+		if (task == null) return;
+		task.cancel();
+		task = null;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Планирование таймера на момент времени часов (запланированный таймер переносится). Прошедший момент -
+	 * срабатывание в следующем такте
+	 * @param time - время срабатывания, мс
+	 */
+	public synchronized void schedule(Timer timer, long time) {
+		if (timer.isScheduled()) unlink(timer);
+		else size++;
+		long tick = Math.floorDiv(time + tickMillis - 1, tickMillis);
+		timer.tick = Math.max(tick, current + 1);
+		place(timer);
+	}
+
+	/**
+	 * Отмена таймера
+	 * @return false - если таймер не был запланирован (или уже сработал)
+	 */
+	public synchronized boolean cancel(Timer timer) {
+		if (!timer.isScheduled()) return false;
+		unlink(timer);
+		size--;
+		return true;
+	}
+
+	/**
+	 * @return число запланированных таймеров
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return число сработавших таймеров
+	 */
+	public synchronized long getExpired() {
+		return expired;
+	}
+
+	/**
+	 * Продвижение колеса до момента времени: обработка всех тактов до него и срабатывание их таймеров
+	 */
+	public void advance(long time) {
+		long target = Math.floorDiv(time, tickMillis);
+		synchronized (advancing) {
+			while (true) {
+				synchronized (this) {
+					if (current >= target) return;
+					current++;
+					cascade();
+					moveAll(wheel[0][(int) current & MASK], expiring);
+				}
+				fire();
+			}
+		}
+	}
+
+	/**
+	 * Перенос таймеров ячеек верхних уровней, оборот которых завершен, на нижние уровни - сначала с верхнего
+	 * уровня, чтобы перенесенные таймеры попали в ячейки, переносимые в этом же такте
+	 */
+	private void cascade() {
+		int levels = 0;
+		while (levels < LEVELS - 1 && (current & ((1L << (BITS * (levels + 1))) - 1)) == 0) levels++;
+		for (int level = levels; level > 0; level--) {
+			Head head = wheel[level][(int) (current >>> (BITS * level)) & MASK];
+			Timer timer = head.next;
+			head.prev = head.next = head;
+			while (timer != head) {
+				Timer next = timer.next;
+				place(timer);
+				timer = next;
+			}
+		}
+	}
+
+	private void fire() {
+		while (true) {
+			Timer timer;
+			synchronized (this) {
+				timer = expiring.next;
+				if (timer == expiring) return;
+				unlink(timer);
+				size--;
+				expired++;
+			}
+			try {
+				timer.expire();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Ячейка по сроку таймера: уровень - по числу тактов до срока, ячейка уровня - по битам такта срока
+	 */
+	private void place(Timer timer) {
+		long delta = timer.tick - current;
+		int level = delta < SLOTS ? 0 : Math.min(LEVELS - 1, (63 - Long.numberOfLeadingZeros(delta)) / BITS);
+		link(wheel[level][(int) (timer.tick >>> (BITS * level)) & MASK], timer);
+	}
+
+	private static void link(Head head, Timer timer) {
+		timer.prev = head.prev;
+		timer.next = head;
+		head.prev.next = timer;
+		head.prev = timer;
+	}
+
+	private static void unlink(Timer timer) {
+		timer.prev.next = timer.next;
+		timer.next.prev = timer.prev;
+		timer.prev = timer.next = null;
+	}
+
+	private static void moveAll(Head from, Head to) {
+		if (from.next == from) return;
+		from.next.prev = to.prev;
+		to.prev.next = from.next;
+		from.prev.next = to;
+		to.prev = from.prev;
+		from.prev = from.next = from;
+	}
+}
@@ -0,0 +1,127 @@
+package env;
+
+import java.util.PriorityQueue;
+
+
+
+/**
+ * Виртуальные часы для ускоренного моделирования. Время не идет само: {@link #advance(long)} исполняет
+ * запланированные задачи в порядке их времени (при равном времени - в порядке планирования) в вызывающем
+ * потоке, переводя часы на время каждой задачи. Поэтому сутки работы модели занимают столько реального
+ * времени, сколько занимают вычисления, а результат повторяем при одинаковых начальных данных.
+ *
+ * Часы ведут учет скорости моделирования - числа смоделированных секунд за секунду реального времени.
+ */
+public class VirtualClock implements Clock {
+	private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+	private long now;
+	private long sequence;
+	private long simulatedMillis;
+	private long realNanos;
+
+	private static final class Entry implements Task, Comparable<Entry> {
+		final Runnable task;
+		final long period;
+		long time;
+		long sequence;
+		volatile boolean cancelled;
+
+		Entry(Runnable task, long time, long period) {
+			this.task = task;
+			this.time = time;
+			this.period = period;
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (time != other.time) return Long.compare(time, other.time);
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+
+	public VirtualClock(long startMillis) {
+		now = startMillis;
+	}
+
+	@Override
+	public synchronized long millis() {
+		return now;
+	}
+
+	@Override
+	public Task schedule(Runnable task, long delay) {
+		return enqueue(task, delay, 0);
+	}
+
+	@Override
+	public Task scheduleAtFixedRate(Runnable task, long delay, long period) {
+		if (period <= 0) throw new IllegalArgumentException("period must be positive - " + period);
+		return enqueue(task, delay, period);
+	}
+
+	private synchronized Entry enqueue(Runnable task, long delay, long period) {
+		Entry entry = new Entry(task, now + Math.max(0, delay), period);
+		entry.sequence = sequence++;
+		queue.add(entry);
+		return entry;
+	}
+
+	/**
+	 * Перевод часов на duration мс вперед с исполнением всех задач, время которых наступает
+	 */
+	public void advance(long duration) {
+		long started = System.nanoTime();
+		long end;
+		synchronized (this) {
+			end = now + duration;
+		}
+		while (true) {
+			Entry entry;
+			synchronized (this) {
+				entry = queue.peek();
+				if (entry == null || entry.time > end) {
+					now = end;
+					break;
+				}
+				queue.poll();
+				now = entry.time;
+			}
+			if (entry.cancelled) continue;
+			try {
+				entry.task.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			if (entry.period > 0 && !entry.cancelled) {
+				synchronized (this) {
+					entry.time += entry.period;
+					entry.sequence = sequence++;
+					queue.add(entry);
+				}
+			}
+		}
+		synchronized (this) {
+			simulatedMillis += duration;
+			realNanos += System.nanoTime() - started;
+		}
+	}
+
+	/**
+	 * число запланированных задач
+	 */
+	public synchronized int pending() {
+		return queue.size();
+	}
+
+	/**
+	 * Скорость моделирования: смоделированных секунд за секунду реального времени
+	 */
+	public synchronized double getSpeedup() {
+		return realNanos == 0 ? 0 : simulatedMillis * 1e6 / realNanos;
+	}
+}
@@ -0,0 +1,299 @@
+package log;
+
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+
+/**
+ * Асинхронный журнал устройств. Вызывающий поток лишь занимает ячейку кольцевого буфера и записывает в нее
+ * шаблон сообщения и его аргументы (примитивы и ссылки на готовые строки) - без форматирования, блокировок
+ * и ввода-вывода. Форматирование и запись выполняет единственный поток записи, который забирает сообщения
+ * пакетами и сбрасывает приемник {@link LogSink} один раз на пакет.
+ *
+ * Буфер - ограниченная очередь без блокировок для многих производителей и одного потребителя: каждая ячейка
+ * хранит номер последовательности, по которому производитель определяет, свободна ли ячейка, а потребитель -
+ * опубликована ли она. При переполнении сообщение отбрасывается (вызывающий поток не ждет), число отброшенных
+ * сообщений периодически сообщается в журнал.
+ *
+ * Использование без аллокаций:
+ *  Event event = log.claim(AsyncLog.INFO, "Heater", "heating at %d%% power");
+ *  if (event != null) log.publish(event.arg(20));
+ */
+public class AsyncLog implements AutoCloseable {
+	public static final int INFO = 0;
+	public static final int ERROR = 1;
+	public static final int MAX_ARGS = 3;
+
+	private static final byte LONG = 1, DOUBLE = 2, OBJECT = 3;
+	/**
+	 * наибольшая длительность ожидания потока записи без сообщений, нс (публикация будит его сразу;
+	 * ожидание ограничено для сообщения о переполнении буфера)
+	 */
+	private static final long IDLE_PARK = 100_000_000;
+
+	private static volatile AsyncLog defaultLog;
+
+	/**
+	 * Ячейка буфера - сообщение журнала. Заполняется между {@link #claim} и {@link #publish}
+	 */
+	public static final class Event {
+		volatile long sequence;
+		long claimed;
+		int level;
+		String source;
+		String template;
+		int argCount;
+		final byte[] kinds = new byte[MAX_ARGS];
+		final long[] longs = new long[MAX_ARGS];
+		final double[] doubles = new double[MAX_ARGS];
+		final Object[] refs = new Object[MAX_ARGS];
+
+		Event(long sequence) {
+			this.sequence = sequence;
+		}
+
+		public Event arg(long value) {
+			kinds[argCount] = LONG;
+			longs[argCount++] = value;
+			return this;
+		}
+
+		public Event arg(double value) {
+			kinds[argCount] = DOUBLE;
+			doubles[argCount++] = value;
+			return this;
+		}
+
+		public Event arg(Object value) {
+			kinds[argCount] = OBJECT;
+			refs[argCount++] = value;
+			return this;
+		}
+	}
+
+	private final Event[] ring;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private long head;
+	private final LongAdder dropped = new LongAdder();
+	private long reportedDropped;
+	private final LogSink sink;
+	private final int batchSize;
+	private final Thread writer;
+	private volatile boolean running = true;
+	/**
+	 * поток записи ожидает сообщений - публикация должна его разбудить
+	 */
+	private volatile boolean parked;
+
+	// состояние потока записи
+	private final StringBuilder line = new StringBuilder(256);
+	private final Formatter formatter = new Formatter(line);
+	private final Object[][] argArrays = new Object[MAX_ARGS + 1][];
+
+	/**
+	 * @param sink - приемник сообщений
+	 * @param capacity - емкость буфера (округляется вверх до степени двойки)
+	 * @param batchSize - наибольшее число сообщений между сбросами приемника
+	 */
+	public AsyncLog(LogSink sink, int capacity, int batchSize) {
+		int size = capacity <= 1 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		ring = new Event[size];
+		for (int i = 0; i < size; i++) ring[i] = new Event(i);
+		mask = size - 1;
+		this.sink = sink;
+		this.batchSize = batchSize;
+		for (int i = 0; i <= MAX_ARGS; i++) argArrays[i] = new Object[i];
+		writer = new Thread(this::writeLoop, "async-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public AsyncLog(LogSink sink) {
+		this(sink, 8192, 256);
+	}
+
+	/**
+	 * Журнал по умолчанию, используемый устройствами. Если не задан - создается журнал на консоль
+	 */
+	public static AsyncLog getDefault() {
+		AsyncLog log = defaultLog;
+		if (log != null) return log;
+		synchronized (AsyncLog.class) {
+			if (defaultLog == null) setDefault(new AsyncLog(new ConsoleSink()));
+			return defaultLog;
+		}
+	}
+
+	/**
+	 * Замена журнала по умолчанию. Предыдущий журнал закрывается с записью накопленных сообщений
+	 */
+	public static synchronized void setDefault(AsyncLog log) {
+		AsyncLog previous = defaultLog;
+		boolean first = previous == null;
+		defaultLog = log;
+		if (previous != null) previous.close();
+		if (first) Runtime.getRuntime().addShutdownHook(new Thread(() -> defaultLog.close(), "async-log-shutdown"));
+	}
+
+	/**
+	 * Занятие ячейки под сообщение
+	 * @return ячейка для заполнения аргументами или null, если буфер переполнен (сообщение отброшено)
+	 */
+	public Event claim(int level, String source, String template) {
+		long pos = tail.get();
+		while (true) {
+			Event event = ring[(int) pos & mask];
+			long dif = event.sequence - pos;
+			if (dif == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					event.claimed = pos;
+					event.level = level;
+					event.source = source;
+					event.template = template;
+					event.argCount = 0;
+					return event;
+				}
+				pos = tail.get();
+			} else if (dif < 0) {
+				dropped.increment();
+				return null;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	public void publish(Event event) {
+		event.sequence = event.claimed + 1;
+		if (parked) LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Сообщение без аргументов - текст выводится как есть
+	 */
+	public void log(int level, String source, String text) {
+		Event event = claim(level, source, null);
+		if (event != null) publish(event.arg(text));
+	}
+
+	public void log(int level, String source, String template, long arg) {
+		Event event = claim(level, source, template);
+		if (event != null) publish(event.arg(arg));
+	}
+
+	public void log(int level, String source, String template, double arg) {
+		Event event = claim(level, source, template);
+		if (event != null) publish(event.arg(arg));
+	}
+
+	/**
+	 * Сообщение с аргументом-ссылкой: строковое представление аргумента получает поток записи
+	 */
+	public void log(int level, String source, String template, Object arg) {
+		Event event = claim(level, source, template);
+		if (event != null) publish(event.arg(arg));
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Остановка потока записи после записи всех опубликованных сообщений
+	 */
+	@Override
+	public void close() {
+		if (!running) return;
+		running = false;
+		LockSupport.unpark(writer);
+		if (Thread.currentThread() == writer) return;
+		try {
+			writer.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeLoop() {
+		while (true) {
+			int written = drain();
+			if (written == 0) {
+				if (!running) break;
+				// флаг выставляется до повторной проверки буфера: сообщение, опубликованное после проверки,
+				// увидит флаг и разбудит поток
+				parked = true;
+				if (ring[(int) head & mask].sequence != head + 1) LockSupport.parkNanos(IDLE_PARK);
+				parked = false;
+			}
+		}
+		try {
+			sink.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Запись пакета опубликованных сообщений
+	 * @return число записанных сообщений
+	 */
+	private int drain() {
+		int written = 0;
+		try {
+			while (written < batchSize) {
+				Event event = ring[(int) head & mask];
+				if (event.sequence != head + 1) break;
+				try {
+					sink.write(event.level, render(event));
+				} catch (IOException | RuntimeException e) {
+					// сообщение пропускается: ячейка освобождается в любом случае, иначе поток записи
+					// повторял бы одно сообщение бесконечно, а все следующие терялись бы
+					e.printStackTrace();
+				} finally {
+					Object[] refs = event.refs;
+					for (int i = 0; i < MAX_ARGS; i++) refs[i] = null;
+					event.source = null;
+					event.sequence = head + ring.length;
+					head++;
+				}
+				written++;
+			}
+			long lost = dropped.sum();
+			if (lost != reportedDropped) {
+				line.setLength(0);
+				line.append("async-log: ").append(lost - reportedDropped).append(" messages dropped\n");
+				reportedDropped = lost;
+				sink.write(ERROR, line);
+				written++;
+			}
+			if (written > 0) sink.flush();
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+		}
+		return written;
+	}
+
+	private CharSequence render(Event event) {
+		line.setLength(0);
+		if (event.source != null) line.append(event.source).append(": ");
+		if (event.template == null) {
+			line.append(event.refs[0]);
+		} else {
+			Object[] args = argArrays[event.argCount];
+			for (int i = 0; i < event.argCount; i++) {
+				switch (event.kinds[i]) {
+					case LONG: args[i] = event.longs[i]; break;
+					case DOUBLE: args[i] = event.doubles[i]; break;
+					default: args[i] = event.refs[i];
+				}
+			}
+			formatter.format(event.template, args);
+		}
+		return line.append('\n');
+	}
+}
@@ -0,0 +1,47 @@
+package log;
+
+import java.io.PrintStream;
+
+
+
+/**
+ * Вывод журнала на консоль: сообщения накапливаются и выводятся в System.out / System.err одним вызовом на пакет
+ */
+public class ConsoleSink implements LogSink {
+	private final PrintStream out;
+	private final PrintStream err;
+	private final StringBuilder outBuffer = new StringBuilder(4096);
+	private final StringBuilder errBuffer = new StringBuilder(1024);
+
+	public ConsoleSink() {
+		this(System.out, System.err);
+	}
+
+	public ConsoleSink(PrintStream out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
+
+	@Override
+	public void write(int level, CharSequence line) {
+		(level == AsyncLog.ERROR ? errBuffer : outBuffer).append(line);
+	}
+
+	@Override
+	public void flush() {
+		flush(outBuffer, out);
+		flush(errBuffer, err);
+	}
+
+	private static void flush(StringBuilder buffer, PrintStream stream) {
+		if (buffer.length() == 0) return;
+		stream.append(buffer);
+		stream.flush();
+		buffer.setLength(0);
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+}
@@ -0,0 +1,359 @@
+package log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+
+
+/**
+ * Журнал команд пользователя и решений контроллера - двоичный файл, в который записи только добавляются.
+ *
+ * Записи накапливаются в буфере и записываются потоком записи журнала пакетами с одним fsync на пакет
+ * (group commit): пока выполняется fsync одного пакета, накапливается следующий, поэтому число fsync
+ * не растет с числом записей. Команда пользователя ({@link #command}) возвращает управление после fsync
+ * пакета, в который она попала, решения контроллера ({@link #decision}) не ждут записи.
+ *
+ * Формат: признак и версия файла, далее записи: длина данных, контрольная сумма, время, вид записи, данные.
+ * Чтение ({@link #read}) останавливается на первой неполной или поврежденной записи - хвосте, записанном
+ * при сбое. Файл читается блоками ограниченного размера, поэтому размер журнала не ограничен памятью.
+ *
+ * Ошибка записи или fsync останавливает журнал: файл усекается до конца последнего записанного на диск
+ * пакета, ожидающие и последующие команды получают ошибку, решения больше не принимаются.
+ */
+public class Journal implements AutoCloseable {
+	public static final byte COMMAND = 1;
+	public static final byte DECISION = 2;
+	/**
+	 * наибольшая длина имени команды, байт - длина записывается двумя байтами без знака
+	 */
+	public static final int MAX_NAME = 0xFFFF;
+
+	private static final int MAGIC = 0x53484a4c;
+	private static final int FORMAT = 1;
+	private static final int RECORD_HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES + 1;
+	/**
+	 * блок чтения файла - не меньше наибольшей записи (команда с именем из 65535 байт)
+	 */
+	private static final int CHUNK = 128 * 1024;
+
+	/**
+	 * Запись журнала. Для команды заполнены name, arg и hasArg, для решения - condition, influenceSign, on и devices
+	 */
+	public static final class Entry {
+		public long time;
+		public byte kind;
+		public String name;
+		public float arg;
+		public boolean hasArg;
+		public int condition;
+		public int influenceSign;
+		public boolean on;
+		public int devices;
+	}
+
+	private final FileChannel channel;
+	private final Thread writer;
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer active = ByteBuffer.allocate(64 * 1024);
+	private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+	private long appended;
+	private long durable;
+	/**
+	 * конец последнего записанного на диск пакета в файле (используется только потоком записи)
+	 */
+	private long durableOffset;
+	private long batches;
+	private IOException failure;
+	private boolean running = true;
+
+	public Journal(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() < 2 * Integer.BYTES) {
+			ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES).putInt(MAGIC).putInt(FORMAT);
+			header.flip();
+			channel.truncate(0);
+			channel.write(header, 0);
+			channel.force(true);
+		}
+		long valid = validLength(channel);
+		channel.truncate(valid);
+		channel.position(valid);
+		durableOffset = valid;
+		writer = new Thread(this::writeLoop, "journal");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Запись команды пользователя. Возвращает управление после записи команды на диск
+	 * @throws IllegalArgumentException - если имя команды длиннее {@link #MAX_NAME} байт в UTF-8
+	 */
+	public void command(long time, String name, float arg, boolean hasArg) throws IOException {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_NAME) {
+			throw new IllegalArgumentException("command name longer than " + MAX_NAME + " bytes - " + bytes.length);
+		}
+		long sequence;
+		synchronized (this) {
+			if (failure != null) throw new IOException("journal write failed", failure);
+			ByteBuffer record = reserve(RECORD_HEADER + Float.BYTES + 1 + Short.BYTES + bytes.length);
+			int start = begin(record, time, COMMAND);
+			record.putFloat(arg).put((byte) (hasArg ? 1 : 0)).putShort((short) bytes.length).put(bytes);
+			sequence = end(record, start);
+		}
+		awaitDurable(sequence);
+	}
+
+	/**
+	 * Запись решения контроллера о включении (on) или выключении устройств, воздействующих на параметр
+	 * климата condition в сторону influenceSign. Не ждет записи на диск
+	 */
+	public synchronized void decision(long time, int condition, int influenceSign, boolean on, int devices) {
+		ByteBuffer record = reserve(RECORD_HEADER + 3 + Integer.BYTES);
+		int start = begin(record, time, DECISION);
+		record.put((byte) condition).put((byte) influenceSign).put((byte) (on ? 1 : 0)).putInt(devices);
+		end(record, start);
+	}
+
+	private ByteBuffer reserve(int length) {
+		if (failure != null) throw new IllegalStateException("journal write failed", failure);
+		if (!running) throw new IllegalStateException("journal is closed");
+		if (active.remaining() < length) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * active.capacity(), active.position() + length));
+			active.flip();
+			grown.put(active);
+			active = grown;
+		}
+		return active;
+	}
+
+	private static int begin(ByteBuffer record, long time, byte kind) {
+		int start = record.position();
+		record.position(start + 2 * Integer.BYTES);
+		record.putLong(time).put(kind);
+		return start;
+	}
+
+	private long end(ByteBuffer record, int start) {
+		int end = record.position();
+		int dataStart = start + 2 * Integer.BYTES;
+		crc.reset();
+		crc.update(record.array(), dataStart, end - dataStart);
+		record.putInt(start, end - dataStart);
+		record.putInt(start + Integer.BYTES, (int) crc.getValue());
+		notifyAll();
+		return ++appended;
+	}
+
+	/**
+	 * Ожидание записи на диск записи с заданным номером
+	 */
+	private synchronized void awaitDurable(long sequence) throws IOException {
+		boolean interrupted = false;
+		while (durable < sequence && failure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		if (failure != null) throw failure;
+	}
+
+	private void writeLoop() {
+		while (true) {
+			long target;
+			ByteBuffer batch;
+			synchronized (this) {
+				while (active.position() == 0 && running) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						running = false;
+					}
+				}
+				if (active.position() == 0) break;
+				batch = active;
+				active = spare;
+				spare = batch;
+				target = appended;
+			}
+			try {
+				batch.flip();
+				while (batch.hasRemaining()) channel.write(batch);
+				channel.force(false);
+				durableOffset = channel.position();
+			} catch (IOException e) {
+				fail(e);
+				break;
+			}
+			batch.clear();
+			synchronized (this) {
+				durable = target;
+				batches++;
+				notifyAll();
+			}
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Остановка журнала после ошибки записи: отказ в новых записях и усечение файла до конца последнего
+	 * записанного на диск пакета, чтобы не оставлять частично записанный пакет перед следующими записями
+	 */
+	private void fail(IOException e) {
+		e.printStackTrace();
+		synchronized (this) {
+			failure = e;
+			running = false;
+			active.clear();
+			notifyAll();
+		}
+		try {
+			channel.truncate(durableOffset);
+			channel.force(true);
+		} catch (IOException truncateFailure) {
+			truncateFailure.printStackTrace();
+		}
+	}
+
+	/**
+	 * число записанных пакетов (fsync)
+	 */
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	public synchronized long getRecords() {
+		return appended;
+	}
+
+	/**
+	 * Остановка потока записи после записи всех накопленных записей
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (!running) return;
+			running = false;
+			notifyAll();
+		}
+		try {
+			writer.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Чтение записей журнала
+	 * @return число прочитанных записей
+	 */
+	public static long read(Path file, Consumer<Entry> consumer) throws IOException {
+		long[] count = {0};
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			scan(channel, entry -> {
+				consumer.accept(entry);
+				count[0]++;
+			});
+		}
+		return count[0];
+	}
+
+	private static boolean header(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 2 * Integer.BYTES) return false;
+		if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) throw new IOException("not a journal file");
+		return true;
+	}
+
+	/**
+	 * Длина файла без поврежденного хвоста - новые записи добавляются после последней целой записи
+	 */
+	private static long validLength(FileChannel channel) throws IOException {
+		return scan(channel, entry -> { });
+	}
+
+	/**
+	 * Последовательное чтение записей файла блоками по {@link #CHUNK} байт: неразобранный остаток блока
+	 * (начало записи, разрезанной границей блока) переносится в начало буфера перед чтением следующего блока
+	 * @return длина файла до конца последней целой записи
+	 */
+	private static long scan(FileChannel channel, Consumer<Entry> consumer) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+		buffer.flip();
+		long size = channel.size();
+		long read = 0;
+		long valid = 0;
+		Entry entry = new Entry();
+		CRC32 crc = new CRC32();
+		while (true) {
+			buffer.compact();
+			while (buffer.hasRemaining() && read < size) {
+				int n = channel.read(buffer, read);
+				if (n < 0) break;
+				read += n;
+			}
+			buffer.flip();
+			if (valid == 0) {
+				if (!header(buffer)) return 0;
+				valid = read - buffer.remaining();
+			}
+			boolean parsed = false;
+			while (next(buffer, entry, crc)) {
+				valid = read - buffer.remaining();
+				consumer.accept(entry);
+				parsed = true;
+			}
+			// конец файла или запись, не уместившаяся в целый блок, - поврежденный хвост
+			if (read >= size || (!parsed && buffer.remaining() == buffer.capacity())) return valid;
+		}
+	}
+
+	/**
+	 * Чтение следующей записи. Позиция буфера продвигается только при успешном чтении
+	 */
+	private static boolean next(ByteBuffer buffer, Entry entry, CRC32 crc) {
+		int start = buffer.position();
+		if (buffer.remaining() < RECORD_HEADER) return false;
+		int length = buffer.getInt();
+		int checksum = buffer.getInt();
+		if (length < Long.BYTES + 1 || length > buffer.remaining()) {
+			buffer.position(start);
+			return false;
+		}
+		crc.reset();
+		crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+		if ((int) crc.getValue() != checksum) {
+			buffer.position(start);
+			return false;
+		}
+		int end = buffer.position() + length;
+		entry.time = buffer.getLong();
+		entry.kind = buffer.get();
+		if (entry.kind == COMMAND) {
+			entry.arg = buffer.getFloat();
+			entry.hasArg = buffer.get() == 1;
+			byte[] name = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(name);
+			entry.name = new String(name, StandardCharsets.UTF_8);
+		} else if (entry.kind == DECISION) {
+			entry.condition = buffer.get();
+			entry.influenceSign = buffer.get();
+			entry.on = buffer.get() == 1;
+			entry.devices = buffer.getInt();
+		}
+		buffer.position(end);
+		return true;
+	}
+}
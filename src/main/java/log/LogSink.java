@@ -0,0 +1,21 @@
+package log;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+
+/**
+ * Приемник сообщений журнала. Вызывается только потоком записи {@link AsyncLog}, поэтому реализации
+ * не обязаны быть потокобезопасными. Сообщения передаются пакетами: несколько вызовов {@link #write}
+ * и один {@link #flush()} в конце пакета
+ */
+public interface LogSink extends Closeable {
+	/**
+	 * @param level - {@link AsyncLog#INFO} или {@link AsyncLog#ERROR}
+	 * @param line - строка сообщения с переводом строки; действительна только до возврата из метода
+	 */
+	void write(int level, CharSequence line) throws IOException;
+
+	void flush() throws IOException;
+}
@@ -0,0 +1,69 @@
+package log;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+
+
+/**
+ * Запись журнала в файл с ротацией: при превышении размера файл переименовывается в name.1
+ * (name.1 в name.2 и т.д.), хранится не более maxFiles старых файлов
+ */
+public class RollingFileSink implements LogSink {
+	private final Path file;
+	private final long maxBytes;
+	private final int maxFiles;
+	private Writer writer;
+	private long written;
+
+	public RollingFileSink(Path file, long maxBytes, int maxFiles) throws IOException {
+		if (maxBytes <= 0) throw new IllegalArgumentException("max size must be positive - " + maxBytes);
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+		open();
+	}
+
+	private void open() throws IOException {
+		written = Files.exists(file) ? Files.size(file) : 0;
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file.toFile(), true),
+				StandardCharsets.UTF_8), 64 * 1024);
+	}
+
+	@Override
+	public void write(int level, CharSequence line) throws IOException {
+		if (written >= maxBytes) roll();
+		writer.append(line);
+		// размер оценивается по числу символов - для ротации точность не важна
+		written += line.length();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	private void roll() throws IOException {
+		writer.close();
+		for (int i = maxFiles - 1; i >= 1; i--) {
+			Path older = rolled(i);
+			if (Files.exists(older)) Files.move(older, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+		}
+		if (maxFiles > 0) Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+		else Files.delete(file);
+		open();
+	}
+
+	private Path rolled(int index) {
+		return Paths.get(file.toString() + "." + index);
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
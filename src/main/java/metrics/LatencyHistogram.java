@@ -0,0 +1,137 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+
+/**
+ * Гистограмма задержек с логарифмическими интервалами: каждая степень двойки наносекунд делится на
+ * {@link #SUB_BUCKETS} равных интервалов, поэтому относительная погрешность процентилей не превышает 25%.
+ * Запись значения - два атомарных сложения без блокировок и создания объектов, поэтому гистограмма может
+ * использоваться на горячем пути, не искажая измеряемое. Счетчики разделены на полосы по потокам, чтобы
+ * потоки, одновременно записывающие близкие значения, не конкурировали за одну ячейку; полосы суммируются
+ * при чтении.
+ */
+public class LatencyHistogram implements LatencyMXBean {
+	private static final int SUB_BITS = 2;
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+	/**
+	 * полоса: счетчики интервалов и сумма значений
+	 */
+	private static final int STRIPE = BUCKETS + 1;
+	private static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+	private final AtomicLongArray counts = new AtomicLongArray(STRIPES * STRIPE);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Запись задержки
+	 * @param nanos - задержка, нс
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE;
+		counts.incrementAndGet(stripe + bucket(nanos));
+		counts.addAndGet(stripe + BUCKETS, nanos);
+		long current;
+		while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+			// повтор при одновременной записи большего значения
+		}
+	}
+
+	/**
+	 * Запись задержки, начавшейся в момент started (System.nanoTime())
+	 */
+	public void recordSince(long started) {
+		record(System.nanoTime() - started);
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * верхняя граница интервала, нс
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		int sub = bucket % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * Процентиль задержки, нс (верхняя граница интервала, в который он попадает)
+	 * @param p - от 0 до 1
+	 */
+	public long percentile(double p) {
+		long[] buckets = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = bucketCount(i);
+			total += buckets[i];
+		}
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(p * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i];
+			if (seen >= rank) return Math.min(upperBound(i), max.get());
+		}
+		return max.get();
+	}
+
+	private long bucketCount(int bucket) {
+		long count = 0;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			count += counts.get(stripe * STRIPE + bucket);
+		}
+		return count;
+	}
+
+	@Override
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += bucketCount(i);
+		}
+		return count;
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long n = getCount();
+		return n == 0 ? 0 : bucketCount(BUCKETS) / 1e3 / n;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return percentile(0.5) / 1e3;
+	}
+
+	@Override
+	public double getP90Micros() {
+		return percentile(0.9) / 1e3;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return percentile(0.99) / 1e3;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return max.get() / 1e3;
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,20 @@
+package metrics;
+
+
+
+/**
+ * Атрибуты гистограммы задержек, доступные через JMX. Время - в микросекундах
+ */
+public interface LatencyMXBean {
+	long getCount();
+	double getMeanMicros();
+	double getP50Micros();
+	double getP90Micros();
+	double getP99Micros();
+	double getMaxMicros();
+
+	/**
+	 * Сброс накопленных значений
+	 */
+	void reset();
+}
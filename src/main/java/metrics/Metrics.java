@@ -0,0 +1,45 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+
+
+
+/**
+ * Регистрация метрик в JMX. Имена объектов - smarthouse:type=тип,name=имя
+ */
+public final class Metrics {
+	public static final String DOMAIN = "smarthouse";
+
+	private Metrics() {
+	}
+
+	/**
+	 * Регистрация объекта метрик (существующий объект с тем же именем заменяется)
+	 */
+	public static void register(String type, String name, Object mbean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName(type, name);
+			if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+			server.registerMBean(mbean, objectName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Имя объекта метрик: smarthouse:type=тип,name="имя". Свойства задаются таблицей ключей - конструктор
+	 * ObjectName(domain, key, value) дает одно свойство, а не type и name
+	 */
+	public static ObjectName objectName(String type, String name) throws MalformedObjectNameException {
+		Hashtable<String, String> properties = new Hashtable<>();
+		properties.put("type", type);
+		properties.put("name", ObjectName.quote(name));
+		return ObjectName.getInstance(DOMAIN, properties);
+	}
+}
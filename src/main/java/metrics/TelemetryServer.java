@@ -0,0 +1,420 @@
+package metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+
+/**
+ * Встроенный HTTP-сервер показаний домов вместо вывода состояния в консоль:
+ * - GET /events - поток Server-Sent Events: раз в период событие status с показаниями всех домов в JSON
+ * - GET /metrics - снимок показаний в текстовом формате Prometheus
+ *
+ * Сервер работает в одном потоке на неблокирующих каналах с селектором, поэтому тысячи подписчиков не требуют
+ * тысяч потоков. Показания собираются и кодируются один раз за период в общий буфер, из которого пишутся
+ * всем подписчикам и ответам /metrics - копия снимка на запрос или подписчика не создается. Подписчик,
+ * не успевающий читать, получает после окончания записи текущего события сразу последнее событие,
+ * пропуская промежуточные, поэтому очередь событий на подписчика не растет.
+ */
+public class TelemetryServer implements AutoCloseable {
+	/**
+	 * период сбора показаний по умолчанию, мс
+	 */
+	public static final long DEFAULT_PERIOD = 1000;
+	private static final int MAX_REQUEST = 2048;
+
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final Thread thread;
+	private final long period;
+	private final Map<String, TelemetrySource> sources = new LinkedHashMap<>();
+	private final Encoder encoder = new Encoder();
+	/**
+	 * ответы, не зависящие от показаний (позиции буферов меняет только поток сервера)
+	 */
+	private final ByteBuffer streamHeaders = response("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n"
+			+ "Cache-Control: no-cache\r\nConnection: keep-alive\r\n\r\nretry: 1000\n\n");
+	private final ByteBuffer notFound = response("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+	private final ByteBuffer badRequest = response("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+	private final ByteBuffer scratch = ByteBuffer.allocateDirect(512);
+	private Snapshot latest;
+	private volatile boolean running = true;
+
+	/**
+	 * Показания одного периода: событие для подписчиков и полный ответ /metrics
+	 */
+	private static final class Snapshot {
+		final ByteBuffer event;
+		final ByteBuffer metrics;
+
+		Snapshot(ByteBuffer event, ByteBuffer metrics) {
+			this.event = event;
+			this.metrics = metrics;
+		}
+	}
+
+	/**
+	 * Состояние соединения
+	 */
+	private static final class Connection {
+		ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+		/**
+		 * подписчик потока событий
+		 */
+		boolean stream;
+		/**
+		 * общий буфер, который пишется в соединение, и позиция в нем
+		 */
+		ByteBuffer sending;
+		int offset;
+		/**
+		 * последний снимок, отправленный подписчику
+		 */
+		Snapshot sent;
+	}
+
+	/**
+	 * @param address - адрес сервера (например, 127.0.0.1 - только локальные подписчики)
+	 * @param period - период сбора показаний, мс
+	 */
+	public TelemetryServer(InetSocketAddress address, long period) throws IOException {
+		if (period <= 0) throw new IllegalArgumentException("period must be positive - " + period);
+		this.period = period;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(address, 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this::serve, "telemetry");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) server.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * Добавление дома. Показания дома с тем же именем заменяются
+	 */
+	public void add(String house, TelemetrySource source) {
+		synchronized (sources) {
+			sources.put(house, source);
+		}
+	}
+
+	public void remove(String house) {
+		synchronized (sources) {
+			sources.remove(house);
+		}
+	}
+
+	private void serve() {
+		long next = System.nanoTime();
+		while (running) {
+			try {
+				long wait = (next - System.nanoTime()) / 1_000_000;
+				if (wait > 0) selector.select(wait);
+				else selector.selectNow();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					handle(key);
+				}
+				long now = System.nanoTime();
+				if (now - next >= 0) {
+					publish();
+					next += period * 1_000_000;
+					if (now - next >= 0) next = now + period * 1_000_000;
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for (SelectionKey key : selector.keys()) {
+			close(key);
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void handle(SelectionKey key) {
+		if (!key.isValid()) return;
+		try {
+			if (key.isAcceptable()) {
+				accept();
+				return;
+			}
+			Connection connection = (Connection) key.attachment();
+			if (key.isReadable()) read(key, connection);
+			if (key.isValid() && key.isWritable()) flush(key, connection);
+		} catch (IOException e) {
+			close(key);
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new Connection());
+		}
+	}
+
+	private void read(SelectionKey key, Connection connection) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		if (connection.request == null) {
+			// запрос уже разобран - данные подписчика не нужны, важен лишь признак закрытия соединения
+			scratch.clear();
+			if (channel.read(scratch) < 0) close(key);
+			return;
+		}
+		if (channel.read(connection.request) < 0) {
+			close(key);
+			return;
+		}
+		String path = path(connection.request);
+		if (path == null) {
+			if (!connection.request.hasRemaining()) respond(key, connection, badRequest);
+			return;
+		}
+		connection.request = null;
+		if (path.equals("/events")) {
+			connection.stream = true;
+			respond(key, connection, streamHeaders);
+		} else if (path.equals("/metrics")) {
+			if (latest == null) publish();
+			respond(key, connection, latest.metrics);
+		} else {
+			respond(key, connection, notFound);
+		}
+	}
+
+	/**
+	 * Путь запроса GET, если заголовки запроса получены полностью, иначе null
+	 */
+	private static String path(ByteBuffer request) {
+		byte[] bytes = request.array();
+		int length = request.position();
+		boolean complete = false;
+		for (int i = 3; i < length && !complete; i++) {
+			complete = bytes[i - 3] == '\r' && bytes[i - 2] == '\n' && bytes[i - 1] == '\r' && bytes[i] == '\n';
+		}
+		if (!complete) return null;
+		String line = new String(bytes, 0, length, StandardCharsets.US_ASCII);
+		line = line.substring(0, line.indexOf('\r'));
+		String[] parts = line.split(" ");
+		if (parts.length < 2 || !parts[0].equals("GET")) return "";
+		int query = parts[1].indexOf('?');
+		return query < 0 ? parts[1] : parts[1].substring(0, query);
+	}
+
+	private void respond(SelectionKey key, Connection connection, ByteBuffer response) throws IOException {
+		connection.sending = response;
+		connection.offset = 0;
+		flush(key, connection);
+	}
+
+	/**
+	 * Запись в соединение из общих буферов без копирования. Подписчику после окончания события
+	 * отправляется последнее событие, если оно еще не отправлено
+	 */
+	private void flush(SelectionKey key, Connection connection) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		while (true) {
+			if (connection.sending == null) {
+				if (!connection.stream) {
+					close(key);
+					return;
+				}
+				if (latest == null || connection.sent == latest) {
+					key.interestOps(SelectionKey.OP_READ);
+					return;
+				}
+				connection.sent = latest;
+				connection.sending = latest.event;
+				connection.offset = 0;
+			}
+			ByteBuffer buffer = connection.sending;
+			buffer.limit(buffer.capacity()).position(connection.offset);
+			channel.write(buffer);
+			connection.offset = buffer.position();
+			if (buffer.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			connection.sending = null;
+		}
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Сбор и кодирование показаний и отправка события подписчикам, ожидающим события
+	 */
+	private void publish() {
+		synchronized (sources) {
+			latest = encoder.encode(System.currentTimeMillis(), sources);
+		}
+		for (SelectionKey key : selector.keys()) {
+			if (!key.isValid() || !(key.attachment() instanceof Connection)) continue;
+			Connection connection = (Connection) key.attachment();
+			if (!connection.stream || connection.sending != null) continue;
+			try {
+				flush(key, connection);
+			} catch (IOException e) {
+				close(key);
+			}
+		}
+	}
+
+	private static ByteBuffer response(String text) {
+		return direct(text.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static ByteBuffer direct(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		return buffer;
+	}
+
+	/**
+	 * Остановка сервера с закрытием всех соединений
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		server.close();
+	}
+
+	/**
+	 * Кодирование показаний за один проход по источникам: событие в JSON и снимок в формате Prometheus
+	 * (метрики сгруппированы по имени)
+	 */
+	private static final class Encoder implements TelemetryWriter {
+		private final StringBuilder json = new StringBuilder();
+		private final StringBuilder conditions = new StringBuilder();
+		private final StringBuilder devices = new StringBuilder();
+		private final StringBuilder conditionValues = new StringBuilder();
+		private final StringBuilder preferenceValues = new StringBuilder();
+		private final StringBuilder onlineValues = new StringBuilder();
+		private final StringBuilder powerValues = new StringBuilder();
+		private String house;
+
+		Snapshot encode(long time, Map<String, TelemetrySource> sources) {
+			json.setLength(0);
+			conditionValues.setLength(0);
+			preferenceValues.setLength(0);
+			onlineValues.setLength(0);
+			powerValues.setLength(0);
+			json.append("event: status\ndata: {\"time\":").append(time).append(",\"houses\":{");
+			boolean first = true;
+			for (Map.Entry<String, TelemetrySource> entry : sources.entrySet()) {
+				house = entry.getKey();
+				conditions.setLength(0);
+				devices.setLength(0);
+				try {
+					entry.getValue().sample(this);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				if (!first) json.append(',');
+				first = false;
+				jsonString(json, house).append(":{\"conditions\":{").append(conditions)
+						.append("},\"devices\":{").append(devices).append("}}");
+			}
+			json.append("}}\n\n");
+
+			StringBuilder text = new StringBuilder(conditionValues.length() + preferenceValues.length()
+					+ onlineValues.length() + powerValues.length() + 512);
+			family(text, "smarthouse_condition", "measured value of climate condition", conditionValues);
+			family(text, "smarthouse_preference", "preferred value of climate condition", preferenceValues);
+			family(text, "smarthouse_device_online", "1 if device is on", onlineValues);
+			family(text, "smarthouse_device_power", "power factor of adjustable device, percent", powerValues);
+			byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+			byte[] headers = ("HTTP/1.1 200 OK\r\nContent-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+					+ "Content-Length: " + body.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+			ByteBuffer metrics = ByteBuffer.allocateDirect(headers.length + body.length);
+			metrics.put(headers).put(body).flip();
+			return new Snapshot(direct(json.toString().getBytes(StandardCharsets.UTF_8)), metrics);
+		}
+
+		@Override
+		public void condition(String condition, double value, double preference) {
+			if (conditions.length() > 0) conditions.append(',');
+			jsonString(conditions, condition).append(":{\"value\":").append(value);
+			if (!Double.isNaN(preference)) conditions.append(",\"preference\":").append(preference);
+			conditions.append('}');
+			sample(conditionValues, "smarthouse_condition", "condition", condition, value);
+			if (!Double.isNaN(preference)) sample(preferenceValues, "smarthouse_preference", "condition", condition, preference);
+		}
+
+		@Override
+		public void device(String device, boolean online, int powerFactor) {
+			if (devices.length() > 0) devices.append(',');
+			jsonString(devices, device).append(":{\"online\":").append(online);
+			if (powerFactor >= 0) devices.append(",\"power\":").append(powerFactor);
+			devices.append('}');
+			sample(onlineValues, "smarthouse_device_online", "device", device, online ? 1 : 0);
+			if (powerFactor >= 0) sample(powerValues, "smarthouse_device_power", "device", device, powerFactor);
+		}
+
+		private void sample(StringBuilder out, String metric, String label, String value, double sample) {
+			out.append(metric).append("{house=\"");
+			labelValue(out, house).append("\",").append(label).append("=\"");
+			labelValue(out, value).append("\"} ").append(sample).append('\n');
+		}
+
+		private static void family(StringBuilder out, String metric, String help, StringBuilder samples) {
+			out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+			out.append("# TYPE ").append(metric).append(" gauge\n").append(samples);
+		}
+
+		private static StringBuilder labelValue(StringBuilder out, String value) {
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '\\' || c == '"') out.append('\\').append(c);
+				else if (c == '\n') out.append("\\n");
+				else out.append(c);
+			}
+			return out;
+		}
+
+		private static StringBuilder jsonString(StringBuilder out, String value) {
+			out.append('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '\\' || c == '"') out.append('\\').append(c);
+				else if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+				else out.append(c);
+			}
+			return out.append('"');
+		}
+	}
+}
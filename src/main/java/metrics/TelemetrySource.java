@@ -0,0 +1,10 @@
+package metrics;
+
+
+
+/**
+ * Источник показаний дома (например, контроллер). Вызывается потоком {@link TelemetryServer} раз в период
+ */
+public interface TelemetrySource {
+	void sample(TelemetryWriter writer);
+}
@@ -0,0 +1,22 @@
+package metrics;
+
+
+
+/**
+ * Получатель показаний дома для {@link TelemetryServer}: параметры климата и состояния устройств
+ */
+public interface TelemetryWriter {
+	/**
+	 * @param condition - название параметра климата
+	 * @param value - измеренное значение
+	 * @param preference - уставка, NaN - не задана
+	 */
+	void condition(String condition, double value, double preference);
+
+	/**
+	 * @param device - описание устройства
+	 * @param online - включено ли устройство
+	 * @param powerFactor - мощность, %, -1 - нерегулируемое устройство
+	 */
+	void device(String device, boolean online, int powerFactor);
+}